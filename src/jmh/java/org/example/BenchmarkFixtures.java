@@ -0,0 +1,87 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic input files for the benchmarks, written by {@link DatasetGenerator} from a
+ * fixed seed, so the benchmarks run offline and every run sees the same data.
+ */
+final class BenchmarkFixtures {
+
+    static final long SEED = 42;
+
+    private static PrintStream originalOut;
+
+    private BenchmarkFixtures() {
+    }
+
+    static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("email-organizer-bench");
+    }
+
+    /**
+     * Writes a checked.csv with the given number of verified addresses.
+     */
+    static void writeChecked(Path file, int rows) throws IOException {
+        generator().verifiedRows(rows).writeChecked(file);
+    }
+
+    /**
+     * Writes a scraped.csv where a share of hitRatio rows carry a verified address.
+     */
+    static void writeScraped(Path file, int rows, int verifiedRows, double hitRatio) throws IOException {
+        generator().verifiedRows(verifiedRows).scrapedRows(rows).hitRatio(hitRatio).writeScraped(file);
+    }
+
+    /**
+     * Writes a scraped.csv like {@link #writeScraped(Path, int, int, double)} with Bio values of
+     * the given average length.
+     */
+    static void writeScraped(Path file, int rows, int verifiedRows, double hitRatio, int bioLength)
+            throws IOException {
+        generator().verifiedRows(verifiedRows).scrapedRows(rows).hitRatio(hitRatio).bioLength(bioLength)
+            .writeScraped(file);
+    }
+
+    /**
+     * Writes the given number of prospect files into a folder. A share of duplicateRatio rows
+     * reuse an address of an earlier row, either in the same file or an earlier one.
+     */
+    static void writeProspects(Path folder, int files, int rowsPerFile, double duplicateRatio) throws IOException {
+        generator().prospectFiles(files).prospectRows((long) files * rowsPerFile)
+            .duplicateRatio(duplicateRatio).writeProspects(folder);
+    }
+
+    private static DatasetGenerator generator() {
+        return new DatasetGenerator().seed(SEED);
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * The tools print progress to System.out on every run; keep it out of the JMH output.
+     */
+    static void silenceStdout() {
+        if (originalOut == null) {
+            originalOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static void restoreStdout() {
+        if (originalOut != null) {
+            System.setOut(originalOut);
+            originalOut = null;
+        }
+    }
+}
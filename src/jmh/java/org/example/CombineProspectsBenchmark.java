@@ -0,0 +1,89 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Combining a folder of prospect files ({@link Main2#combineProspectsCsvFiles}) for different
+ * file counts and duplicate ratios. The total row count is fixed, so the score (prospect rows
+ * per second) is comparable across file counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombineProspectsBenchmark {
+
+    static final int ROWS = 256_000;
+
+    @Param({"1", "8", "32"})
+    public int files;
+
+    @Param({"0.0", "0.3", "0.8"})
+    public double duplicateRatio;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"commons", "mapped"})
+    public String tokenizer;
+
+    @Param({"commons", "utf8"})
+    public String writer;
+
+    private Path directory;
+    private Path prospectsFolder;
+    private Path outputFile;
+    private long fileBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFixtures.createDirectory();
+        prospectsFolder = Files.createDirectory(directory.resolve("prospects"));
+        outputFile = directory.resolve("combined_prospects.csv");
+        BenchmarkFixtures.writeProspects(prospectsFolder, files, ROWS / files, duplicateRatio);
+        try (Stream<Path> paths = Files.list(prospectsFolder)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                fileBytes += Files.size(path);
+            }
+        }
+
+        System.setProperty(CsvSource.TOKENIZER_PROPERTY, tokenizer);
+        System.setProperty(Main2.THREADS_PROPERTY, Integer.toString(threads));
+        System.setProperty(CsvOutput.WRITER_PROPERTY, writer);
+        BenchmarkFixtures.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.restoreStdout();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void combineProspects(ByteCounter counter) throws IOException {
+        counter.bytes += fileBytes;
+        Main2.combineProspectsCsvFiles(prospectsFolder.toString(), outputFile.toString());
+    }
+}
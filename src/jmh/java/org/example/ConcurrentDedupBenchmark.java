@@ -0,0 +1,171 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * Contention of a dedup set shared by 1 to 64 parser threads: every thread inserts its slice
+ * of the prospect emails (half of them repeats) into one fresh set per invocation.
+ * The score is inserts per second over all threads.
+ *
+ * Sets: 'concurrent' ({@link ConcurrentFingerprintSet} growing from empty), 'presized' (the
+ * same set sized for all emails up front), and the String based alternatives it replaces,
+ * 'synchronized' (a HashSet behind one lock) and 'chm' (ConcurrentHashMap.newKeySet()).
+ *
+ * 'sharded' is the lock-free alternative to the shared set: every parser thread routes its
+ * slice as one file through a {@link ShardedDeduplicator}, one shard thread per two parser
+ * threads, and the calling thread waits for every verdict the way the combine's writer does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentDedupBenchmark {
+
+    static final int EMAILS = 1 << 20;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int threads;
+
+    @Param({"concurrent", "presized", "synchronized", "chm", "sharded"})
+    public String set;
+
+    private String[] emails;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        emails = new String[EMAILS];
+        for (int i = 0; i < EMAILS; i++) {
+            emails[i] = "prospect" + random.nextInt(EMAILS / 2) + "@example.com";
+        }
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public int insertIfAbsent() throws Exception {
+        if (set.equals("sharded")) {
+            return insertSharded();
+        }
+        IntPredicate insert;
+        switch (set) {
+            case "concurrent":
+            case "presized":
+                ConcurrentFingerprintSet fingerprints =
+                    new ConcurrentFingerprintSet(set.equals("presized") ? EMAILS / 2 : 0, false);
+                insert = i -> fingerprints.add(EmailNormalizer.fingerprint(emails[i]));
+                break;
+            case "synchronized":
+                Set<String> locked = Collections.synchronizedSet(new HashSet<>());
+                insert = i -> locked.add(EmailNormalizer.normalize(emails[i]));
+                break;
+            case "chm":
+                Set<String> keySet = ConcurrentHashMap.newKeySet();
+                insert = i -> keySet.add(EmailNormalizer.normalize(emails[i]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown set: " + set);
+        }
+
+        // Interleaved slices, so every thread keeps hitting the keys of the others
+        Future<?>[] futures = new Future<?>[threads];
+        int[] added = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures[t] = pool.submit(() -> {
+                for (int i = thread; i < EMAILS; i += threads) {
+                    if (insert.test(i)) {
+                        added[thread]++;
+                    }
+                }
+            });
+        }
+
+        int unique = 0;
+        for (int t = 0; t < threads; t++) {
+            futures[t].get();
+            unique += added[t];
+        }
+        return unique;
+    }
+
+    /**
+     * Routes the same interleaved slices through the shard threads; each parser thread is one
+     * file of the deduplicator.
+     */
+    private int insertSharded() throws Exception {
+        ShardedDeduplicator deduplicator = new ShardedDeduplicator("fingerprint",
+            Integer.highestOneBit(Math.max(1, threads / 2)), threads);
+        deduplicator.start();
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            ParallelProspectsCombiner.ParsedRow[] rows = new ParallelProspectsCombiner.ParsedRow[EMAILS];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures[t] = pool.submit(() -> {
+                    ShardedDeduplicator.Router router = deduplicator.open(thread);
+                    try {
+                        long sequence = (long) thread << 32;
+                        for (int i = thread; i < EMAILS; i += threads) {
+                            ParallelProspectsCombiner.ParsedRow row =
+                                new ParallelProspectsCombiner.ParsedRow(emails[i], null);
+                            row.fingerprint = EmailNormalizer.fingerprint(emails[i]);
+                            row.sequence = sequence++;
+                            router.route(row);
+                            rows[i] = row;
+                        }
+                        router.flush();
+                    } finally {
+                        router.close();
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            int unique = 0;
+            for (ParallelProspectsCombiner.ParsedRow row : rows) {
+                if (ShardedDeduplicator.await(row) == SpillingDeduplicator.UNIQUE) {
+                    unique++;
+                }
+            }
+            return unique;
+        } finally {
+            deduplicator.stop();
+        }
+    }
+}
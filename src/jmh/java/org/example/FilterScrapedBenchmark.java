@@ -0,0 +1,94 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering scraped.csv against a loaded verified set ({@link Main#filterScrapedFile}) at
+ * different shares of verified rows. The score is scraped rows per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterScrapedBenchmark {
+
+    static final int ROWS = 500_000;
+    static final int VERIFIED_ROWS = 200_000;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double hitRatio;
+
+    @Param({"commons", "mapped"})
+    public String tokenizer;
+
+    @Param({"false", "true"})
+    public boolean bloom;
+
+    /** Copies verified rows byte for byte; only takes effect with the mapped tokenizer. */
+    @Param({"false", "true"})
+    public boolean passthrough;
+
+    @Param({"commons", "utf8"})
+    public String writer;
+
+    private Path directory;
+    private Path scrapedFile;
+    private Path outputFile;
+    private long fileBytes;
+    private EmailLookup checkedEmails;
+    private BlockedBloomFilter bloomFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFixtures.createDirectory();
+        Path checkedFile = directory.resolve("checked.csv");
+        scrapedFile = directory.resolve("scraped.csv");
+        outputFile = directory.resolve("filtered_scraped.csv");
+        BenchmarkFixtures.writeChecked(checkedFile, VERIFIED_ROWS);
+        BenchmarkFixtures.writeScraped(scrapedFile, ROWS, VERIFIED_ROWS, hitRatio);
+        fileBytes = Files.size(scrapedFile);
+
+        System.setProperty(CsvSource.TOKENIZER_PROPERTY, tokenizer);
+        System.setProperty(Main.FILTER_PASSTHROUGH_PROPERTY, Boolean.toString(passthrough));
+        System.setProperty(CsvOutput.WRITER_PROPERTY, writer);
+        BenchmarkFixtures.silenceStdout();
+
+        BlockedBloomFilter.Builder bloomBuilder = bloom ? new BlockedBloomFilter.Builder() : null;
+        checkedEmails = Main.readCheckedEmails(checkedFile.toString(), EmailSet.create(0), bloomBuilder);
+        bloomFilter = bloom ? bloomBuilder.build(0.01) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.restoreStdout();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void filterScraped(ByteCounter counter) throws IOException {
+        counter.bytes += fileBytes;
+        Main.filterScrapedFile(scrapedFile.toString(), outputFile.toString(),
+            checkedEmails, bloomFilter, Main.COLUMNS_TO_REMOVE, null);
+    }
+}
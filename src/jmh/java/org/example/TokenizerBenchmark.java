@@ -0,0 +1,79 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing scraped.csv and reading its Email column, the part of the filter that
+ * 'csv.tokenizer' and 'csv.scanner' change. 'commons' is Apache Commons CSV, 'scalar' and
+ * 'vector' are the mapped tokenizer with the given {@link CsvScanner}. The fork adds the
+ * Vector API module so 'vector' can load. The score is scraped rows per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    static final int ROWS = 200_000;
+
+    @Param({"120", "2000"})
+    public int bioLength;
+
+    @Param({"commons", "scalar", "vector"})
+    public String tokenizer;
+
+    private Path directory;
+    private Path scrapedFile;
+    private long fileBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFixtures.createDirectory();
+        scrapedFile = directory.resolve("scraped.csv");
+        BenchmarkFixtures.writeScraped(scrapedFile, ROWS, ROWS / 10, 0.1, bioLength);
+        fileBytes = Files.size(scrapedFile);
+
+        boolean commons = tokenizer.equals("commons");
+        System.setProperty(CsvSource.TOKENIZER_PROPERTY, commons ? "commons" : "mapped");
+        System.setProperty(CsvScanner.SCANNER_PROPERTY, commons ? "auto" : tokenizer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long tokenize(ByteCounter counter) throws IOException {
+        counter.bytes += fileBytes;
+        long emailChars = 0;
+        try (CsvSource csvSource = CsvSource.open(scrapedFile)) {
+            int emailIndex = csvSource.indexOf("Email");
+            while (csvSource.nextRecord()) {
+                emailChars += csvSource.get(emailIndex).length();
+            }
+        }
+        return emailChars;
+    }
+}
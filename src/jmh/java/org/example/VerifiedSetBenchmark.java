@@ -0,0 +1,71 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading checked.csv into the verified email set ({@link Main#readCheckedEmails}).
+ * The score is verified rows per second; with -prof gc, gc.alloc.rate.norm is bytes per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerifiedSetBenchmark {
+
+    static final int ROWS = 500_000;
+
+    @Param({"hashset", "fingerprint", "exact"})
+    public String set;
+
+    @Param({"commons", "mapped"})
+    public String tokenizer;
+
+    private Path directory;
+    private Path checkedFile;
+    private long fileBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFixtures.createDirectory();
+        checkedFile = directory.resolve("checked.csv");
+        BenchmarkFixtures.writeChecked(checkedFile, ROWS);
+        fileBytes = Files.size(checkedFile);
+
+        System.setProperty(CsvSource.TOKENIZER_PROPERTY, tokenizer);
+        System.setProperty(EmailSet.SET_PROPERTY, set);
+        BenchmarkFixtures.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.restoreStdout();
+        BenchmarkFixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public EmailSet loadVerifiedSet(ByteCounter counter) throws IOException {
+        counter.bytes += fileBytes;
+        return Main.readCheckedEmails(checkedFile.toString(), EmailSet.create(0), null);
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CsvOutput} backed by Apache Commons CSV's CSVPrinter with CSVFormat.DEFAULT, the way
+ * the tools have always written their output: through a buffered UTF-8 Writer to the file, or
+ * into a StringBuilder for in-memory blocks.
+ */
+final class CommonsCsvOutput implements CsvOutput {
+
+    private final WritableByteChannel channel;
+    private final StringBuilder text;
+    private final CSVPrinter csvPrinter;
+
+    /**
+     * @param channel Output channel, or null for an in-memory output
+     */
+    CommonsCsvOutput(WritableByteChannel channel) {
+        this.channel = channel;
+        try {
+            if (channel != null) {
+                this.text = null;
+                this.csvPrinter = new CSVPrinter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)),
+                    CSVFormat.DEFAULT);
+            } else {
+                this.text = new StringBuilder();
+                this.csvPrinter = new CSVPrinter(text, CSVFormat.DEFAULT);
+            }
+        } catch (IOException e) {
+            // Only thrown for a header, and none is configured
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void print(CharSequence value) throws IOException {
+        csvPrinter.print(value);
+    }
+
+    @Override
+    public void println() throws IOException {
+        csvPrinter.println();
+    }
+
+    @Override
+    public void write(ByteBuffer formatted) throws IOException {
+        csvPrinter.flush();
+        while (formatted.hasRemaining()) {
+            channel.write(formatted);
+        }
+    }
+
+    @Override
+    public ByteBuffer bytes() {
+        if (text == null) {
+            throw new UnsupportedOperationException("Not an in-memory output");
+        }
+        return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        csvPrinter.flush();
+    }
+}
@@ -0,0 +1,146 @@
+package org.example;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link CsvSource} backed by Apache Commons CSV. This is the original reading path of
+ * both tools and stays the default tokenizer.
+ */
+final class CommonsCsvSource implements CsvSource {
+
+    private final CSVParser csvParser;
+    private final Iterator<CSVRecord> records;
+    private final Map<String, Integer> headerMap;
+    private CSVRecord record;
+
+    CommonsCsvSource(Path path) throws IOException {
+        this.csvParser = new CSVParser(Files.newBufferedReader(path), inputFormat());
+        this.records = csvParser.iterator();
+        this.headerMap = csvParser.getHeaderMap();
+    }
+
+    CommonsCsvSource(ByteBuffer block) {
+        // A strict decoder, so malformed UTF-8 fails like Files.newBufferedReader does
+        Reader reader = new InputStreamReader(new ByteBufferInputStream(block.duplicate()),
+            StandardCharsets.UTF_8.newDecoder());
+        try {
+            this.csvParser = new CSVParser(reader, blockFormat());
+        } catch (IOException e) {
+            // Reading from memory, the constructor only reads a header and blocks have none
+            throw new UncheckedIOException(e);
+        }
+        this.records = csvParser.iterator();
+        this.headerMap = null;
+    }
+
+    /**
+     * CSV format used to read every input file.
+     *
+     * @return Format with the first record as header, trimmed values and empty lines ignored
+     */
+    static CSVFormat inputFormat() {
+        return CSVFormat.DEFAULT
+                .withFirstRecordAsHeader()
+                .withIgnoreEmptyLines(true)
+                .withTrim(true)
+                .withAllowMissingColumnNames(true);
+    }
+
+    /**
+     * Same as {@link #inputFormat()} for blocks cut out of a file after its header.
+     *
+     * @return Format with trimmed values and empty lines ignored, without a header record
+     */
+    static CSVFormat blockFormat() {
+        return CSVFormat.DEFAULT
+                .withIgnoreEmptyLines(true)
+                .withTrim(true);
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return csvParser.getHeaderNames();
+    }
+
+    @Override
+    public int indexOf(String header) {
+        Integer index = headerMap != null ? headerMap.get(header) : null;
+        return index != null ? index : -1;
+    }
+
+    @Override
+    public boolean nextRecord() throws IOException {
+        try {
+            if (!records.hasNext()) {
+                record = null;
+                return false;
+            }
+            record = records.next();
+            return true;
+        } catch (UncheckedIOException e) {
+            // CSVParser's iterator wraps parse errors, surface them as the IOException they are
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public int size() {
+        return record.size();
+    }
+
+    @Override
+    public String get(int index) {
+        if (index >= record.size()) {
+            return "";
+        }
+        String value = record.get(index);
+        return value != null ? value : "";
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvParser.close();
+    }
+
+    /**
+     * Reads a block from its position to its limit, without copying it to the heap first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Thread-safe set of 64-bit email fingerprints (see {@link EmailNormalizer#fingerprint}) for
+ * parser threads that deduplicate concurrently.
+ *
+ * The fingerprints are striped over {@link #SEGMENTS} segments by their top bits. Each segment
+ * is a small open-addressing table like {@link EmailFingerprintSet} with its own lock, so
+ * threads only contend when they hit the same segment, and a segment that fills up doubles on
+ * its own while the others stay available: there is no stop-the-world rehash of the whole set.
+ * The lower bits pick the slot, and fmix64 makes them independent of the segment bits.
+ *
+ * Created with first sequences, every fingerprint also keeps the smallest sequence number it
+ * was {@link #claim claimed} with. Parser threads claim each row with its (file, row) position
+ * in any order; once every earlier row has been claimed, {@link #isFirst} tells whether a row
+ * is the first occurrence of its email, which is the sequential first-seen-wins result.
+ *
+ * Only fingerprints are stored, with no exact confirmation like {@link EmailFingerprintSet}
+ * offers, so the set is approximate: two addresses with the same fingerprint (about n / 2^64
+ * per lookup) count as one, and the later row of the pair is dropped as a duplicate.
+ */
+final class ConcurrentFingerprintSet implements EmailSet {
+
+    /** Number of lock stripes, enough to keep 64 threads mostly apart. */
+    static final int SEGMENTS = 256;
+
+    private static final int SEGMENT_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final double MAX_LOAD = 0.7;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final boolean firstSequences;
+
+    /**
+     * @param expectedSize Number of fingerprints the set is expected to hold, used for pre-sizing
+     * @param firstSequences true to keep the smallest claimed sequence of every fingerprint
+     */
+    ConcurrentFingerprintSet(int expectedSize, boolean firstSequences) {
+        this.firstSequences = firstSequences;
+        int segmentCapacity = tableSizeFor((long) Math.ceil(Math.max(expectedSize / SEGMENTS, 16) / MAX_LOAD));
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity, firstSequences);
+        }
+    }
+
+    /**
+     * Inserts the fingerprint if it is absent.
+     *
+     * @param fingerprint Non-zero fingerprint
+     * @return true if the fingerprint was not in the set yet
+     */
+    boolean add(long fingerprint) {
+        Segment segment = segmentFor(fingerprint);
+        synchronized (segment) {
+            int slot = segment.find(fingerprint);
+            if (segment.keys[slot] != 0) {
+                return false;
+            }
+            segment.insert(slot, fingerprint, 0);
+            return true;
+        }
+    }
+
+    /**
+     * Records that a row with this fingerprint occurs at the given position.
+     *
+     * @param fingerprint Non-zero fingerprint
+     * @param sequence Position of the row, smaller for rows that come first in the output order
+     */
+    void claim(long fingerprint, long sequence) {
+        Segment segment = segmentFor(fingerprint);
+        synchronized (segment) {
+            int slot = segment.find(fingerprint);
+            if (segment.keys[slot] == 0) {
+                segment.insert(slot, fingerprint, sequence);
+            } else if (sequence < segment.sequences[slot]) {
+                segment.sequences[slot] = sequence;
+            }
+        }
+    }
+
+    /**
+     * @param fingerprint Fingerprint of a claimed row
+     * @param sequence Position the row was claimed with
+     * @return true if no row with the same fingerprint was claimed at an earlier position
+     */
+    boolean isFirst(long fingerprint, long sequence) {
+        Segment segment = segmentFor(fingerprint);
+        synchronized (segment) {
+            int slot = segment.find(fingerprint);
+            return segment.keys[slot] != 0 && segment.sequences[slot] == sequence;
+        }
+    }
+
+    /**
+     * @param fingerprint Non-zero fingerprint
+     * @return true if the fingerprint is in the set
+     */
+    boolean contains(long fingerprint) {
+        Segment segment = segmentFor(fingerprint);
+        synchronized (segment) {
+            return segment.keys[segment.find(fingerprint)] != 0;
+        }
+    }
+
+    @Override
+    public boolean add(CharSequence email) {
+        return add(EmailNormalizer.fingerprint(email));
+    }
+
+    @Override
+    public boolean contains(CharSequence email) {
+        return contains(EmailNormalizer.fingerprint(email));
+    }
+
+    @Override
+    public boolean add(ByteBuffer buffer, int offset, int length) {
+        return add(EmailNormalizer.fingerprint(buffer, offset, length));
+    }
+
+    @Override
+    public boolean contains(ByteBuffer buffer, int offset, int length) {
+        return contains(EmailNormalizer.fingerprint(buffer, offset, length));
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        long slots = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                slots += segment.keys.length;
+            }
+        }
+        return slots * (firstSequences ? 2 * Long.BYTES : Long.BYTES);
+    }
+
+    @Override
+    public String memoryReport() {
+        return EmailSet.super.memoryReport() + String.format(" [%d segments%s]",
+            SEGMENTS, firstSequences ? ", first sequences" : "");
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> SEGMENT_SHIFT)];
+    }
+
+    private static int tableSizeFor(long capacity) {
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Too many emails for one segment: " + capacity);
+        }
+        return Math.max(16, Integer.highestOneBit((int) capacity - 1) << 1);
+    }
+
+    /**
+     * One stripe: linear probing over fingerprints (0 = empty slot), guarded by its own monitor.
+     */
+    private static final class Segment {
+        long[] keys;
+        long[] sequences;
+        int mask;
+        int size;
+        int resizeThreshold;
+
+        Segment(int capacity, boolean firstSequences) {
+            allocate(capacity, firstSequences);
+        }
+
+        /**
+         * @return Slot holding the fingerprint, or the empty slot where it belongs
+         */
+        int find(long fingerprint) {
+            int slot = (int) fingerprint & mask;
+            while (true) {
+                long current = keys[slot];
+                if (current == 0 || current == fingerprint) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        void insert(int slot, long fingerprint, long sequence) {
+            keys[slot] = fingerprint;
+            if (sequences != null) {
+                sequences[slot] = sequence;
+            }
+            if (++size > resizeThreshold) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldSequences = sequences;
+            allocate(oldKeys.length * 2, oldSequences != null);
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) {
+                    continue;
+                }
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                if (sequences != null) {
+                    sequences[slot] = oldSequences[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity, boolean firstSequences) {
+            keys = new long[capacity];
+            sequences = firstSequences ? new long[capacity] : null;
+            mask = capacity - 1;
+            resizeThreshold = (int) (capacity * MAX_LOAD);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds record boundaries in raw CSV bytes without tokenizing the values.
+ *
+ * A line break only ends a record when it is outside an encapsulated value, so the scanner
+ * tracks just enough state to tell the two apart: whether the current value started with a
+ * quote, and whether a quote inside it was the closing one or the first half of a doubled
+ * quote. Like the tokenizers, a quote only opens an encapsulated value as the first byte of
+ * the value; anywhere else it is an ordinary character.
+ *
+ * The state survives between calls, so a file can be scanned block by block. At a record
+ * boundary the state is always {@link #FIELD_START}.
+ *
+ * A range in the middle of a file can also be scanned without knowing the state at its start:
+ * {@link #summarize} runs the scanner from all four start states at once, so ranges can be
+ * summarized in parallel and the real state at each range start is found afterwards by
+ * chaining the summaries in file order.
+ */
+final class CsvBoundaryScanner {
+
+    /** At the first byte of a value. */
+    static final int FIELD_START = 0;
+    /** Inside a value that did not start with a quote, or after a closing quote. */
+    static final int UNQUOTED = 1;
+    /** Inside an encapsulated value. */
+    static final int QUOTED = 2;
+    /** Right after a quote inside an encapsulated value: either closing or doubled. */
+    static final int QUOTE_IN_QUOTED = 3;
+
+    private static final int STATES = 4;
+
+    // Byte classes
+    private static final int OTHER = 0;
+    private static final int DELIMITER = 1;
+    private static final int QUOTE = 2;
+    private static final int LINE_BREAK = 3;
+
+    /** Set in a transition when the byte ends a record. */
+    private static final int BOUNDARY = 4;
+
+    private static final byte[] CLASSES = new byte[256];
+
+    /** Single state transitions, indexed by state * 4 + byte class. */
+    private static final byte[] TRANSITIONS = new byte[STATES * 4];
+
+    /**
+     * Transitions of all four start states at once, indexed by packed states * 4 + byte class.
+     * Lane i of the packed states is bits 2i..2i+1; bit 8 + i of a transition is set when lane
+     * i hits a record boundary.
+     */
+    private static final short[] LANE_TRANSITIONS = new short[256 * 4];
+    private static final int ALL_LANES = FIELD_START | UNQUOTED << 2 | QUOTED << 4 | QUOTE_IN_QUOTED << 6;
+
+    /** Packed states that ordinary value bytes do not change, so runs of them can be skipped. */
+    private static final boolean[] SETTLED = new boolean[256];
+
+    private static final int SCAN_CHUNK = 64 << 10;
+
+    static {
+        CLASSES[','] = DELIMITER;
+        CLASSES['"'] = QUOTE;
+        CLASSES['\n'] = LINE_BREAK;
+        CLASSES['\r'] = LINE_BREAK;
+
+        for (int state = 0; state < STATES; state++) {
+            for (int byteClass = 0; byteClass < 4; byteClass++) {
+                TRANSITIONS[state << 2 | byteClass] = (byte) transition(state, byteClass);
+            }
+        }
+        for (int lanes = 0; lanes < 256; lanes++) {
+            for (int byteClass = 0; byteClass < 4; byteClass++) {
+                int next = 0;
+                for (int lane = 0; lane < STATES; lane++) {
+                    int t = TRANSITIONS[(lanes >>> (lane * 2) & 3) << 2 | byteClass];
+                    next |= (t & 3) << (lane * 2);
+                    if ((t & BOUNDARY) != 0) {
+                        next |= 1 << (8 + lane);
+                    }
+                }
+                LANE_TRANSITIONS[lanes << 2 | byteClass] = (short) next;
+            }
+            SETTLED[lanes] = LANE_TRANSITIONS[lanes << 2 | OTHER] == lanes;
+        }
+    }
+
+    private int state;
+
+    CsvBoundaryScanner(int state) {
+        this.state = state;
+    }
+
+    /**
+     * @return State after the last scanned byte
+     */
+    int state() {
+        return state;
+    }
+
+    /**
+     * Scans a range of bytes that directly follows the previously scanned one.
+     *
+     * @param data Bytes to scan
+     * @param from First byte of the range
+     * @param to End of the range, exclusive
+     * @return Offset right after the last record-ending line break in the range, or -1 if
+     *         the range has none
+     */
+    int scan(byte[] data, int from, int to) {
+        int s = state;
+        int boundary = -1;
+
+        for (int i = from; i < to; i++) {
+            int byteClass = CLASSES[data[i] & 0xFF];
+            if (byteClass == OTHER && (s == UNQUOTED || s == QUOTED)) {
+                // Ordinary byte inside a value: no state change
+                continue;
+            }
+            int t = TRANSITIONS[s << 2 | byteClass];
+            if ((t & BOUNDARY) != 0) {
+                boundary = i + 1;
+            }
+            s = t & 3;
+        }
+
+        state = s;
+        return boundary;
+    }
+
+    /**
+     * Scans a range for every possible start state in a single pass.
+     *
+     * @param data Range to scan, from position 0 to its limit; the position is not changed
+     * @param fileOffset Position of the range in its file
+     * @return End state and first boundary of the range for each start state
+     */
+    static Summary summarize(ByteBuffer data, long fileOffset) {
+        Summary summary = new Summary();
+        byte[] chunk = new byte[SCAN_CHUNK];
+        int lanes = ALL_LANES;
+        boolean settled = false;
+        int pending = (1 << STATES) - 1;
+        int limit = data.limit();
+
+        for (int from = 0; from < limit; from += SCAN_CHUNK) {
+            int length = Math.min(SCAN_CHUNK, limit - from);
+            data.get(from, chunk, 0, length);
+
+            for (int i = 0; i < length; i++) {
+                int byteClass = CLASSES[chunk[i] & 0xFF];
+                if (byteClass == OTHER && settled) {
+                    // Ordinary byte inside a value: no state change in any lane
+                    continue;
+                }
+                int t = LANE_TRANSITIONS[lanes << 2 | byteClass];
+                int hits = t >>> 8 & pending;
+                if (hits != 0) {
+                    for (int lane = 0; lane < STATES; lane++) {
+                        if ((hits & 1 << lane) != 0) {
+                            summary.firstBoundary[lane] = fileOffset + from + i + 1;
+                        }
+                    }
+                    pending &= ~hits;
+                }
+                lanes = t & 0xFF;
+                settled = SETTLED[lanes];
+            }
+        }
+
+        for (int lane = 0; lane < STATES; lane++) {
+            summary.endState[lane] = lanes >>> (lane * 2) & 3;
+        }
+        return summary;
+    }
+
+    /**
+     * Tells whether a block holds a record at all. The header is the first record of a file,
+     * which need not be in the first block when the file starts with empty lines.
+     *
+     * @param block Block content from position 0 to its limit
+     * @return true unless the block only holds empty lines, which the tokenizers skip
+     */
+    static boolean containsRecord(ByteBuffer block) {
+        for (int i = 0, limit = block.limit(); i < limit; i++) {
+            byte b = block.get(i);
+            if (b != '\n' && b != '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int transition(int state, int byteClass) {
+        switch (state) {
+            case QUOTED:
+                return byteClass == QUOTE ? QUOTE_IN_QUOTED : QUOTED;
+            case QUOTE_IN_QUOTED:
+                if (byteClass == QUOTE) {
+                    // Doubled quote, still inside the value
+                    return QUOTED;
+                }
+                break;
+            case FIELD_START:
+                if (byteClass == QUOTE) {
+                    return QUOTED;
+                }
+                break;
+            default:
+                break;
+        }
+
+        // Outside quotes: a delimiter starts a value, a line break ends the record
+        if (byteClass == DELIMITER) {
+            return FIELD_START;
+        }
+        if (byteClass == LINE_BREAK) {
+            return FIELD_START | BOUNDARY;
+        }
+        return UNQUOTED;
+    }
+
+    /**
+     * What scanning one range does, for each state the range may start in.
+     */
+    static final class Summary {
+        /** State after the last byte of the range, by start state. */
+        final int[] endState = new int[STATES];
+        /** File offset right after the first record-ending line break, by start state; -1 if none. */
+        final long[] firstBoundary = {-1, -1, -1, -1};
+    }
+}
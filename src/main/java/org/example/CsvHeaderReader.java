@@ -0,0 +1,70 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the header record of a CSV file without opening a full {@link CsvSource}.
+ *
+ * The file is read in small steps only up to the end of its first record (found with
+ * {@link CsvBoundaryScanner}, so quoted header names may contain line breaks), which keeps the
+ * cost independent of the file size. The header is then tokenized with the tokenizer selected
+ * by 'csv.tokenizer', so names come out exactly as {@link CsvSource#getHeaderNames()} returns
+ * them.
+ */
+final class CsvHeaderReader {
+
+    private static final int READ_SIZE = 8 << 10;
+
+    private CsvHeaderReader() {
+    }
+
+    /**
+     * @param path CSV file
+     * @return Header names in file order, empty if the file has no records
+     * @throws IOException if the file cannot be read or its header is malformed
+     */
+    static List<String> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CsvBoundaryScanner scanner = new CsvBoundaryScanner(CsvBoundaryScanner.FIELD_START);
+            byte[] data = new byte[READ_SIZE];
+            int filled = 0;
+            int end;
+
+            while (true) {
+                if (filled == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                int read = channel.read(ByteBuffer.wrap(data, filled, data.length - filled));
+                if (read < 0) {
+                    end = filled;
+                    break;
+                }
+                int boundary = scanner.scan(data, filled, filled + read);
+                filled += read;
+
+                // Leading empty lines are skipped like the tokenizers skip them
+                if (boundary >= 0 && CsvBoundaryScanner.containsRecord(ByteBuffer.wrap(data, 0, boundary))) {
+                    end = boundary;
+                    break;
+                }
+            }
+
+            try (CsvSource header = CsvSource.openBlock(ByteBuffer.wrap(data, 0, end), 0)) {
+                List<String> names = new ArrayList<>();
+                if (header.nextRecord()) {
+                    for (int i = 0; i < header.size(); i++) {
+                        names.add(header.get(i));
+                    }
+                }
+                return names;
+            }
+        }
+    }
+}
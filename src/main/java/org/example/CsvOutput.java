@@ -0,0 +1,123 @@
+package org.example;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Record-at-a-time CSV output, the counterpart of {@link CsvSource}.
+ *
+ * Both tools write their output through this interface so the formatter can be swapped
+ * without touching the filtering and combining logic. The implementation is picked by the
+ * 'csv.writer' system property:
+ * - 'commons' (default) - Apache Commons CSV printer, see {@link CommonsCsvOutput}
+ * - 'utf8' - encodes straight into a large byte buffer, see {@link Utf8CsvWriter}
+ *
+ * Both write CSVFormat.DEFAULT: comma delimiter, values quoted only when needed (doubling
+ * their quotes) and CRLF after every record, byte for byte the same.
+ */
+interface CsvOutput extends Flushable {
+
+    /** System property selecting the writer implementation. */
+    String WRITER_PROPERTY = "csv.writer";
+
+    /**
+     * Opens an output on a file with the writer selected by 'csv.writer' and prints the
+     * header record.
+     *
+     * @param channel Output channel; the caller closes it after the last {@link #flush()}
+     * @param headers Column names of the header record
+     * @return Output positioned after the header
+     * @throws IOException if the header cannot be written
+     */
+    static CsvOutput open(WritableByteChannel channel, List<String> headers) throws IOException {
+        String writer = System.getProperty(WRITER_PROPERTY, "commons");
+        CsvOutput output;
+        switch (writer) {
+            case "commons":
+                output = new CommonsCsvOutput(channel);
+                break;
+            case "utf8":
+                output = new Utf8CsvWriter(channel);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown " + WRITER_PROPERTY + ": " + writer);
+        }
+        output.printRecord(headers.toArray(new String[0]));
+        return output;
+    }
+
+    /**
+     * Opens an in-memory output with the writer selected by 'csv.writer', for a block of
+     * records that is formatted on one thread and written to the file by another.
+     *
+     * @return Empty output whose records are read back with {@link #bytes()}
+     */
+    static CsvOutput openBuffer() {
+        String writer = System.getProperty(WRITER_PROPERTY, "commons");
+        switch (writer) {
+            case "commons":
+                return new CommonsCsvOutput(null);
+            case "utf8":
+                return new Utf8CsvWriter(null);
+            default:
+                throw new IllegalArgumentException("Unknown " + WRITER_PROPERTY + ": " + writer);
+        }
+    }
+
+    /**
+     * Prints a value into the current record.
+     *
+     * @param value Value, or null for an empty value that is never quoted
+     * @throws IOException if writing fails
+     */
+    void print(CharSequence value) throws IOException;
+
+    /**
+     * Prints a value of the current record of a source into the current output record. The
+     * default reads it as a String; implementations may copy it without decoding.
+     *
+     * @param source Source positioned on a record
+     * @param index Column index in the source
+     * @throws IOException if writing fails
+     */
+    default void print(CsvSource source, int index) throws IOException {
+        print(source.get(index));
+    }
+
+    /**
+     * Ends the current record.
+     *
+     * @throws IOException if writing fails
+     */
+    void println() throws IOException;
+
+    /**
+     * Prints a whole record.
+     *
+     * @param values Values of the record, not null
+     * @throws IOException if writing fails
+     */
+    default void printRecord(String... values) throws IOException {
+        for (String value : values) {
+            print(value);
+        }
+        println();
+    }
+
+    /**
+     * Appends records that were already formatted, e.g. the {@link #bytes()} of a buffer.
+     *
+     * @param formatted UTF-8 bytes of whole records, from position to limit
+     * @throws IOException if writing fails
+     */
+    void write(ByteBuffer formatted) throws IOException;
+
+    /**
+     * @return UTF-8 bytes of everything printed into an {@link #openBuffer()} output
+     * @throws UnsupportedOperationException for file outputs
+     */
+    ByteBuffer bytes();
+}
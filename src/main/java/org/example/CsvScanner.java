@@ -0,0 +1,121 @@
+package org.example;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds the structural bytes of CSV input for {@link MappedCsvSource}: the delimiter or line
+ * break that ends an unquoted value, and the closing quote of a quoted value. These two loops
+ * are where the tokenizer spends most of its time on wide rows with long values.
+ *
+ * The implementation is picked by the 'csv.scanner' system property:
+ * - 'auto' (default) - {@link VectorCsvScanner} if the Vector API is available, else scalar
+ * - 'vector' - {@link VectorCsvScanner}; prints a note and falls back if it is unavailable
+ * - 'scalar' - {@link ScalarCsvScanner}, one byte at a time
+ *
+ * The Vector API is the incubator module jdk.incubator.vector, which is only resolved when the
+ * JVM is started with '--add-modules jdk.incubator.vector'. The vector scanner is therefore
+ * loaded reflectively, and only used if it loads and the CPU has vectors of at least 128 bits.
+ *
+ * Scanners may keep state about the last bytes they looked at, so every source creates its own.
+ */
+interface CsvScanner {
+
+    /** System property selecting the scanner implementation. */
+    String SCANNER_PROPERTY = "csv.scanner";
+
+    /** Flag of a {@link #closingQuote} result: doubled quotes were skipped on the way. */
+    int ESCAPED = Integer.MIN_VALUE;
+
+    byte DELIMITER = ',';
+    byte QUOTE = '"';
+    byte CR = '\r';
+    byte LF = '\n';
+
+    /**
+     * Creates a scanner selected by 'csv.scanner'.
+     *
+     * @return New scanner for one source
+     */
+    static CsvScanner create() {
+        String scanner = System.getProperty(SCANNER_PROPERTY, "auto");
+        switch (scanner) {
+            case "scalar":
+                return new ScalarCsvScanner();
+            case "auto":
+            case "vector":
+                CsvScanner vector = VectorLoader.newScanner();
+                if (vector != null) {
+                    return vector;
+                }
+                if (scanner.equals("vector") && VectorLoader.NOTED.compareAndSet(false, true)) {
+                    System.out.println("Note: " + SCANNER_PROPERTY + "=vector needs '--add-modules "
+                        + "jdk.incubator.vector' and SIMD support; scanning one byte at a time instead");
+                }
+                return new ScalarCsvScanner();
+            default:
+                throw new IllegalArgumentException("Unknown " + SCANNER_PROPERTY + ": " + scanner);
+        }
+    }
+
+    /**
+     * @param buffer Input bytes
+     * @param from First byte of an unquoted value
+     * @param limit End of the input bytes
+     * @return Index of the first delimiter, CR or LF at or after from, or limit if there is none
+     */
+    int delimiterOrLineBreak(ByteBuffer buffer, int from, int limit);
+
+    /**
+     * Finds the quote that closes a quoted value, skipping doubled quotes. A quote in the last
+     * byte before limit is returned as closing, since the byte after it is unknown.
+     *
+     * @param buffer Input bytes
+     * @param from First byte after the opening quote
+     * @param limit End of the input bytes
+     * @return Index of the closing quote, or limit if there is none; with {@link #ESCAPED} set
+     *         if doubled quotes were skipped
+     */
+    int closingQuote(ByteBuffer buffer, int from, int limit);
+
+    /**
+     * Loads {@link VectorCsvScanner} once, the first time a scanner is created.
+     */
+    final class VectorLoader {
+
+        static final AtomicBoolean NOTED = new AtomicBoolean();
+
+        private static final Constructor<? extends CsvScanner> CONSTRUCTOR = load();
+
+        private VectorLoader() {
+        }
+
+        static CsvScanner newScanner() {
+            if (CONSTRUCTOR == null) {
+                return null;
+            }
+            try {
+                return CONSTRUCTOR.newInstance();
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        private static Constructor<? extends CsvScanner> load() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return null;
+            }
+            try {
+                Class<? extends CsvScanner> type = Class.forName("org.example.VectorCsvScanner")
+                    .asSubclass(CsvScanner.class);
+                if (!(Boolean) type.getDeclaredMethod("isSupported").invoke(null)) {
+                    return null;
+                }
+                return type.getDeclaredConstructor();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
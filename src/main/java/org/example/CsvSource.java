@@ -0,0 +1,112 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Record-at-a-time view over a CSV file whose first record is the header.
+ *
+ * Both tools read their input through this interface so the tokenizer can be swapped
+ * without touching the filtering and combining logic. The implementation is picked by the
+ * 'csv.tokenizer' system property:
+ * - 'commons' (default) - Apache Commons CSV parser, see {@link CommonsCsvSource}
+ * - 'mapped' - zero-copy tokenizer over a memory-mapped file, see {@link MappedCsvSource}
+ *
+ * Both implementations follow the input format the tools have always used: first record as
+ * header, empty lines ignored, values trimmed and missing column names allowed.
+ */
+interface CsvSource extends Closeable {
+
+    /** System property selecting the tokenizer implementation. */
+    String TOKENIZER_PROPERTY = "csv.tokenizer";
+
+    /**
+     * Opens a CSV file with the tokenizer selected by 'csv.tokenizer'.
+     *
+     * @param path CSV file to read
+     * @return Source positioned before the first data record
+     * @throws IOException if the file cannot be opened or its header cannot be read
+     */
+    static CsvSource open(Path path) throws IOException {
+        String tokenizer = System.getProperty(TOKENIZER_PROPERTY, "commons");
+        switch (tokenizer) {
+            case "commons":
+                return new CommonsCsvSource(path);
+            case "mapped":
+                return new MappedCsvSource(path);
+            default:
+                throw new IllegalArgumentException("Unknown " + TOKENIZER_PROPERTY + ": " + tokenizer);
+        }
+    }
+
+    /**
+     * Opens a block of complete records cut out of a larger CSV file, with the tokenizer
+     * selected by 'csv.tokenizer'. The block has no header of its own: every record in it
+     * is returned by {@link #nextRecord()}, and columns can only be read by index.
+     *
+     * @param block Block content from position 0 to its limit, starting and ending at a
+     *              record boundary; heap or mapped
+     * @param fileOffset Position of the block in the file, used in error messages
+     * @return Source positioned before the first record of the block
+     */
+    static CsvSource openBlock(ByteBuffer block, long fileOffset) {
+        String tokenizer = System.getProperty(TOKENIZER_PROPERTY, "commons");
+        switch (tokenizer) {
+            case "commons":
+                return new CommonsCsvSource(block);
+            case "mapped":
+                return new MappedCsvSource(block, fileOffset);
+            default:
+                throw new IllegalArgumentException("Unknown " + TOKENIZER_PROPERTY + ": " + tokenizer);
+        }
+    }
+
+    /**
+     * @return Header names in file order, as read from the first record
+     */
+    List<String> getHeaderNames();
+
+    /**
+     * Finds a column by name. If the name occurs more than once the last occurrence wins,
+     * matching CSVParser's header map.
+     *
+     * @param header Column name
+     * @return Column index, or -1 if the file has no such column
+     */
+    int indexOf(String header);
+
+    /**
+     * Advances to the next data record.
+     *
+     * @return true if a record is available, false at end of file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    boolean nextRecord() throws IOException;
+
+    /**
+     * @return Number of values in the current record
+     */
+    int size();
+
+    /**
+     * Reads a value of the current record by index.
+     *
+     * @param index Column index
+     * @return Trimmed value, or "" if the record is shorter than the index
+     */
+    String get(int index);
+
+    /**
+     * Reads a value of the current record by column name.
+     *
+     * @param header Column name
+     * @return Trimmed value, or "" if the column does not exist in this file or record
+     */
+    default String get(String header) {
+        int index = indexOf(header);
+        return index >= 0 ? get(index) : "";
+    }
+}
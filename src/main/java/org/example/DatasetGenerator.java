@@ -0,0 +1,523 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Deterministic synthetic dataset generator for scale testing of {@link Main} and {@link Main2}.
+ *
+ * Writes files with the shapes the tools expect:
+ * - 'checked.csv' - verified emails in the second column, like an ELV export
+ * - 'scraped.csv' - the scraped profile columns (Followers, Following, Tweets, Bio, ...) with an
+ *   Email column, where a configurable share of rows carries a verified address
+ * - 'prospects/*.csv' - prospect exports with 'email' and 'personal_email' columns and a
+ *   configurable share of addresses repeated from earlier rows and files
+ *
+ * Rows are generated in blocks on a thread pool and written in order, so the output depends only
+ * on the seed and the options, never on the thread count. Every random decision that another row
+ * may depend on (which address a duplicate repeats) is a pure function of the seed and the row
+ * number, so blocks can be generated independently.
+ *
+ * Command line: java org.example.DatasetGenerator [--option=value ...], see {@link #main}.
+ */
+public final class DatasetGenerator {
+
+    private static final int BLOCK_ROWS = 16384;
+
+    private static final String[] SCRAPED_HEADERS = {
+        "Name", "Screen name", "Followers", "Following", "Tweets", "Bio", "Email", "Location",
+        "Profile picture link"
+    };
+    private static final String[] PROSPECT_HEADERS = {
+        "first_name", "last_name", "email", "personal_email", "company", "title", "linkedin_url"
+    };
+
+    private static final String[] FIRST_NAMES = {
+        "anna", "ben", "carla", "david", "elena", "felix", "greta", "hugo", "ines", "jonas",
+        "klara", "leon", "mia", "noah", "olga", "paul", "quinn", "rosa", "sam", "tina"
+    };
+    private static final String[] LAST_NAMES = {
+        "smith", "mueller", "garcia", "rossi", "novak", "martin", "kowalski", "jensen", "silva",
+        "dubois", "schmidt", "brown", "lopez", "fischer", "weber", "costa", "berg", "young"
+    };
+    private static final String[] DOMAINS = {
+        "gmail.com", "yahoo.com", "outlook.com", "example.com", "mail.de", "proton.me",
+        "company.io", "startup.dev", "agency.co", "university.edu"
+    };
+    private static final String[] WORDS = {
+        "founder", "engineer", "coffee", "travel", "music", "design", "data", "growth", "marketing",
+        "open", "source", "runner", "photographer", "writer", "building", "future", "cloud", "café",
+        "crypto", "health", "teacher", "dad", "mom", "gamer", "art"
+    };
+    private static final String[] CITIES = {
+        "Berlin", "Paris", "London", "New York", "São Paulo", "Tokyo", "Madrid", "Warsaw", "Oslo"
+    };
+
+    private long seed = 42;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long verifiedRows = 1_000_000;
+    private long scrapedRows = 1_000_000;
+    private int prospectFiles = 10;
+    private long prospectRows = 1_000_000;
+    private double hitRatio = 0.05;
+    private double duplicateRatio = 0.2;
+    private double emptyEmailRatio = 0.05;
+    private int columns;
+    private int bioLength = 120;
+    private double quoteRatio = 0.1;
+
+    /**
+     * Command line entry point.
+     *
+     * Options (all optional): --out=DIR, --what=all|checked|scraped|prospects, --seed=N,
+     * --threads=N, --verified-rows=N, --scraped-rows=N, --prospect-files=N, --prospect-rows=N,
+     * --hit-ratio=R, --duplicate-ratio=R, --empty-email-ratio=R, --columns=N, --bio-length=N,
+     * --quote-ratio=R. Row counts accept suffixes k, m and g (e.g. 500m).
+     */
+    public static void main(String[] args) throws IOException {
+        DatasetGenerator generator = new DatasetGenerator();
+        Path out = Paths.get(".");
+        String what = "all";
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "out": out = Paths.get(value); break;
+                case "what": what = value; break;
+                case "seed": generator.seed(Long.parseLong(value)); break;
+                case "threads": generator.threads(Integer.parseInt(value)); break;
+                case "verified-rows": generator.verifiedRows(parseCount(value)); break;
+                case "scraped-rows": generator.scrapedRows(parseCount(value)); break;
+                case "prospect-files": generator.prospectFiles(Integer.parseInt(value)); break;
+                case "prospect-rows": generator.prospectRows(parseCount(value)); break;
+                case "hit-ratio": generator.hitRatio(Double.parseDouble(value)); break;
+                case "duplicate-ratio": generator.duplicateRatio(Double.parseDouble(value)); break;
+                case "empty-email-ratio": generator.emptyEmailRatio(Double.parseDouble(value)); break;
+                case "columns": generator.columns(Integer.parseInt(value)); break;
+                case "bio-length": generator.bioLength(Integer.parseInt(value)); break;
+                case "quote-ratio": generator.quoteRatio(Double.parseDouble(value)); break;
+                default: throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+
+        Files.createDirectories(out);
+        long start = System.nanoTime();
+        if (what.equals("all") || what.equals("checked")) {
+            generator.writeChecked(out.resolve("checked.csv"));
+        }
+        if (what.equals("all") || what.equals("scraped")) {
+            generator.writeScraped(out.resolve("scraped.csv"));
+        }
+        if (what.equals("all") || what.equals("prospects")) {
+            generator.writeProspects(Files.createDirectories(out.resolve("prospects")));
+        }
+        System.out.printf("Generated %s in %s (%.1f s)%n", what, out.toAbsolutePath(),
+            (System.nanoTime() - start) / 1e9);
+    }
+
+    DatasetGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    DatasetGenerator threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    DatasetGenerator verifiedRows(long verifiedRows) {
+        this.verifiedRows = Math.max(1, verifiedRows);
+        return this;
+    }
+
+    DatasetGenerator scrapedRows(long scrapedRows) {
+        this.scrapedRows = scrapedRows;
+        return this;
+    }
+
+    DatasetGenerator prospectFiles(int prospectFiles) {
+        this.prospectFiles = prospectFiles;
+        return this;
+    }
+
+    /** Total prospect rows, spread evenly over the prospect files. */
+    DatasetGenerator prospectRows(long prospectRows) {
+        this.prospectRows = prospectRows;
+        return this;
+    }
+
+    /** Share of scraped rows whose email is in checked.csv. */
+    DatasetGenerator hitRatio(double hitRatio) {
+        this.hitRatio = hitRatio;
+        return this;
+    }
+
+    /** Share of prospect rows that repeat an address from an earlier row. */
+    DatasetGenerator duplicateRatio(double duplicateRatio) {
+        this.duplicateRatio = duplicateRatio;
+        return this;
+    }
+
+    /** Share of scraped and prospect rows without any email. */
+    DatasetGenerator emptyEmailRatio(double emptyEmailRatio) {
+        this.emptyEmailRatio = emptyEmailRatio;
+        return this;
+    }
+
+    /** Total column count of scraped and prospect files; extra columns are appended as needed. */
+    DatasetGenerator columns(int columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /** Average length of the Bio column in characters. */
+    DatasetGenerator bioLength(int bioLength) {
+        this.bioLength = Math.max(2, bioLength);
+        return this;
+    }
+
+    /** Share of free-text fields that need quoting (embedded commas, quotes or line breaks). */
+    DatasetGenerator quoteRatio(double quoteRatio) {
+        this.quoteRatio = quoteRatio;
+        return this;
+    }
+
+    /**
+     * Writes checked.csv: one verified address per row, in the second column.
+     */
+    void writeChecked(Path file) throws IOException {
+        writeFile(file, header(new String[] {"Name", "Email", "ELV Result"}, 0), verifiedRows,
+            (out, row, random) -> {
+                appendName(out, row, ' ');
+                out.append(',');
+                appendEmail(out, row, 'v');
+                out.append(",ok\n");
+            });
+    }
+
+    /**
+     * Writes scraped.csv with the columns {@link Main} filters and removes.
+     */
+    void writeScraped(Path file) throws IOException {
+        int extraColumns = Math.max(0, columns - SCRAPED_HEADERS.length);
+        writeFile(file, header(SCRAPED_HEADERS, extraColumns), scrapedRows, (out, row, random) -> {
+            appendName(out, row + verifiedRows, ' ');
+            out.append(",@").appendLong(row).append(',')
+                .appendLong(random.nextInt(1_000_000)).append(',')
+                .appendLong(random.nextInt(10_000)).append(',')
+                .appendLong(random.nextInt(100_000)).append(',');
+            appendText(out, random, bioLength);
+            out.append(',');
+
+            double emailRoll = random.nextDouble();
+            if (emailRoll >= emptyEmailRatio) {
+                boolean hit = emailRoll < emptyEmailRatio + hitRatio * (1 - emptyEmailRatio);
+                long id = hit ? random.nextLong(verifiedRows) : verifiedRows + random.nextLong(1L << 40);
+                appendVariant(out, random, id, 'v');
+            }
+            out.append(',');
+
+            String city = CITIES[random.nextInt(CITIES.length)];
+            if (random.nextDouble() < quoteRatio) {
+                out.append('"').append(city).append(", ").append(city.substring(0, 2).toUpperCase(Locale.ROOT)).append('"');
+            } else {
+                out.append(city);
+            }
+            out.append(",https://pbs.example.com/profile_images/").appendLong(row).append(".jpg");
+            appendExtraColumns(out, random, extraColumns);
+            out.append('\n');
+        });
+    }
+
+    /**
+     * Writes prospectFiles files named prospects000.csv, prospects001.csv, ... into a folder.
+     */
+    void writeProspects(Path folder) throws IOException {
+        int extraColumns = Math.max(0, columns - PROSPECT_HEADERS.length);
+        long rowsPerFile = prospectFiles > 0 ? prospectRows / prospectFiles : 0;
+
+        for (int f = 0; f < prospectFiles; f++) {
+            long firstRow = f * rowsPerFile;
+            Path file = folder.resolve(String.format("prospects%03d.csv", f));
+            writeFile(file, header(PROSPECT_HEADERS, extraColumns), rowsPerFile, (out, row, random) -> {
+                long globalRow = firstRow + row;
+                long id = prospectEmailId(globalRow);
+                appendName(out, globalRow, ',');
+                out.append(',');
+
+                double emailRoll = random.nextDouble();
+                if (emailRoll < emptyEmailRatio) {
+                    out.append(",");
+                } else if (emailRoll < emptyEmailRatio + (1 - emptyEmailRatio) * 0.1) {
+                    // Work email missing, Main2 falls back to personal_email
+                    out.append(',');
+                    appendVariant(out, random, id, 'p');
+                } else {
+                    appendVariant(out, random, id, 'p');
+                    out.append(',');
+                    if (random.nextInt(4) == 0) {
+                        appendEmail(out, id + (1L << 50), 'p');
+                    }
+                }
+
+                out.append(",Company ").appendLong(random.nextInt(50_000)).append(',');
+                if (random.nextDouble() < quoteRatio) {
+                    out.append("\"Head of Growth, \"\"EMEA\"\"\"");
+                } else {
+                    out.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                out.append(",https://www.linkedin.com/in/p").appendLong(globalRow);
+                appendExtraColumns(out, random, extraColumns);
+                out.append('\n');
+            });
+        }
+    }
+
+    /**
+     * Address id of a prospect row. Duplicates repeat the address of a random earlier row,
+     * resolved recursively so they always point at an address that a row actually produced.
+     */
+    private long prospectEmailId(long row) {
+        while (row > 0 && unitInterval(mix(seed ^ row * 0x9E3779B97F4A7C15L)) < duplicateRatio) {
+            row = Long.remainderUnsigned(mix(seed + row * 0xC2B2AE3D27D4EB4FL), row);
+        }
+        return row;
+    }
+
+    private void appendName(ByteBuilder out, long id, char separator) {
+        long hash = mix(seed ^ id);
+        out.append(capitalize(FIRST_NAMES[(int) Long.remainderUnsigned(hash, FIRST_NAMES.length)])).append(separator)
+            .append(capitalize(LAST_NAMES[(int) Long.remainderUnsigned(hash >>> 20, LAST_NAMES.length)]));
+    }
+
+    /**
+     * Appends the canonical (lower-case) address for an id. The namespace letter keeps verified
+     * and prospect addresses apart.
+     */
+    private void appendEmail(ByteBuilder out, long id, char namespace) {
+        long hash = mix(seed ^ id ^ namespace);
+        out.append(FIRST_NAMES[(int) Long.remainderUnsigned(hash, FIRST_NAMES.length)]).append('.')
+            .append(LAST_NAMES[(int) Long.remainderUnsigned(hash >>> 20, LAST_NAMES.length)])
+            .append(namespace).appendLong(id).append('@')
+            .append(DOMAINS[(int) Long.remainderUnsigned(hash >>> 40, DOMAINS.length)]);
+    }
+
+    /**
+     * Appends an address the way it shows up in messy exports: sometimes upper-cased or padded.
+     */
+    private void appendVariant(ByteBuilder out, SplittableRandom random, long id, char namespace) {
+        int variant = random.nextInt(20);
+        int start = out.length();
+        if (variant == 0) {
+            out.append(' ');
+        }
+        appendEmail(out, id, namespace);
+        if (variant == 1) {
+            out.upperCase(start);
+        } else if (variant == 2) {
+            out.upperCase(start, start + 1);
+        }
+    }
+
+    /**
+     * Appends a free-text field of about the given length; some of them need quoting.
+     */
+    private void appendText(ByteBuilder out, SplittableRandom random, int averageLength) {
+        int length = averageLength / 2 + random.nextInt(averageLength);
+        boolean quoted = random.nextDouble() < quoteRatio;
+        if (quoted) {
+            out.append('"');
+        }
+        int start = out.length();
+        while (out.length() - start < length) {
+            out.append(WORDS[random.nextInt(WORDS.length)]);
+            if (quoted) {
+                int punctuation = random.nextInt(12);
+                if (punctuation == 0) {
+                    out.append(',');
+                } else if (punctuation == 1) {
+                    out.append(" \"\"quote\"\"");
+                } else if (punctuation == 2) {
+                    out.append('\n');
+                }
+            }
+            out.append(' ');
+        }
+        if (quoted) {
+            out.append('"');
+        }
+    }
+
+    private void appendExtraColumns(ByteBuilder out, SplittableRandom random, int extraColumns) {
+        for (int i = 0; i < extraColumns; i++) {
+            out.append(',').append(WORDS[random.nextInt(WORDS.length)]).appendLong(random.nextInt(1000));
+        }
+    }
+
+    private static String header(String[] headers, int extraColumns) {
+        StringBuilder header = new StringBuilder(String.join(",", headers));
+        for (int i = 1; i <= extraColumns; i++) {
+            header.append(",Extra ").append(i);
+        }
+        return header.append('\n').toString();
+    }
+
+    /**
+     * Generates blocks of rows on the pool and appends them to the file in block order.
+     * At most two blocks per thread are in flight, which bounds memory use.
+     */
+    private void writeFile(Path file, String header, long rows, RowWriter rowWriter) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dataset-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+
+            long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            long fileSalt = mix(seed ^ file.getFileName().toString().hashCode());
+            Deque<Future<ByteBuilder>> inFlight = new ArrayDeque<>();
+            long nextBlock = 0;
+
+            while (nextBlock < blocks || !inFlight.isEmpty()) {
+                while (nextBlock < blocks && inFlight.size() < threads * 2) {
+                    long block = nextBlock++;
+                    inFlight.add(pool.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(mix(fileSalt + block));
+                        ByteBuilder out = new ByteBuilder(BLOCK_ROWS * 64);
+                        long first = block * BLOCK_ROWS;
+                        long last = Math.min(rows, first + BLOCK_ROWS);
+                        for (long row = first; row < last; row++) {
+                            rowWriter.write(out, row, random);
+                        }
+                        return out;
+                    }));
+                }
+
+                ByteBuilder block = inFlight.poll().get();
+                writeFully(channel, ByteBuffer.wrap(block.bytes, 0, block.length()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating " + file, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to generate " + file, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private static long parseCount(String value) {
+        char suffix = Character.toLowerCase(value.charAt(value.length() - 1));
+        long multiplier = suffix == 'k' ? 1_000L : suffix == 'm' ? 1_000_000L : suffix == 'g' ? 1_000_000_000L : 1;
+        String digits = multiplier == 1 ? value : value.substring(0, value.length() - 1);
+        return Long.parseLong(digits.replace("_", "")) * multiplier;
+    }
+
+    private static long mix(long value) {
+        return EmailFingerprintSet.finish(value);
+    }
+
+    private static double unitInterval(long value) {
+        return (value >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Appends one generated row; the random source is private to the current block.
+     */
+    private interface RowWriter {
+        void write(ByteBuilder out, long row, SplittableRandom random);
+    }
+
+    /**
+     * Minimal growable UTF-8 byte buffer for building a block of rows.
+     */
+    private static final class ByteBuilder {
+        private byte[] bytes;
+        private int length;
+
+        ByteBuilder(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int length() {
+            return length;
+        }
+
+        ByteBuilder append(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        ByteBuilder append(String text) {
+            ensure(text.length() * 3);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else {
+                    byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(encoded, 0, bytes, length, encoded.length);
+                    length += encoded.length;
+                }
+            }
+            return this;
+        }
+
+        ByteBuilder appendLong(long value) {
+            return append(Long.toString(value));
+        }
+
+        void upperCase(int from) {
+            upperCase(from, length);
+        }
+
+        void upperCase(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] >= 'a' && bytes[i] <= 'z') {
+                    bytes[i] -= 'a' - 'A';
+                }
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
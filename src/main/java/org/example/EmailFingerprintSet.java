@@ -0,0 +1,363 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact {@link EmailSet} that stores 64-bit fingerprints of the addresses in a flat long[]
+ * with open addressing (linear probing).
+ *
+ * A java.util.HashSet spends roughly 100 bytes per address on the node, the String and its
+ * byte[]; this set spends 8 bytes per table slot, about 11-16 bytes per address at its load
+ * factor. A lookup is a hash over the chars plus a probe of adjacent longs, and allocates
+ * nothing for ASCII addresses (see {@link EmailNormalizer}), whether they are passed as chars or
+ * as UTF-8 bytes of the input.
+ *
+ * Fingerprints alone can in theory produce a false match (about n / 2^64 per lookup). When
+ * created with exact confirmation, the UTF-8 bytes of each address are also kept in a paged
+ * byte arena and every fingerprint hit is compared against them.
+ */
+final class EmailFingerprintSet implements EmailSet {
+
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_SHIFT);
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    // Exact confirmation: slot -> reference into the arena (page << PAGE_SHIFT | offset)
+    private final boolean exact;
+    private int[] references;
+    private byte[][] pages;
+    private int pageCount;
+    private int pageOffset;
+
+    EmailFingerprintSet(int expectedSize, boolean exact) {
+        this.exact = exact;
+        int capacity = tableSizeFor((long) Math.ceil(Math.max(expectedSize, 16) / MAX_LOAD));
+        allocate(capacity);
+        if (exact) {
+            pages = new byte[16][];
+            pages[0] = new byte[PAGE_SIZE];
+            pageCount = 1;
+        }
+    }
+
+    /**
+     * Computes the 64-bit fingerprint of an already normalized address. For raw values use
+     * {@link EmailNormalizer#fingerprint}, which returns the same value without normalizing first.
+     * FNV-1a over the UTF-16 chars, finished with the MurmurHash3 fmix64 avalanche step.
+     *
+     * @param email Normalized address
+     * @return Fingerprint, never 0 (0 marks an empty slot)
+     */
+    static long fingerprint(CharSequence email) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = email.length(); i < length; i++) {
+            hash ^= email.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return finish(hash);
+    }
+
+    static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    @Override
+    public boolean add(CharSequence email) {
+        long fingerprint = EmailNormalizer.fingerprint(email);
+        int slot = (int) fingerprint & mask;
+
+        while (true) {
+            long current = table[slot];
+            if (current == 0) {
+                break;
+            }
+            if (current == fingerprint && (!exact || matches(references[slot], email))) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = fingerprint;
+        if (exact) {
+            references[slot] = store(EmailNormalizer.normalize(email));
+        }
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(CharSequence email) {
+        long fingerprint = EmailNormalizer.fingerprint(email);
+        int slot = (int) fingerprint & mask;
+
+        while (true) {
+            long current = table[slot];
+            if (current == 0) {
+                return false;
+            }
+            if (current == fingerprint && (!exact || matches(references[slot], email))) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public boolean add(ByteBuffer buffer, int offset, int length) {
+        long fingerprint = EmailNormalizer.fingerprint(buffer, offset, length);
+        int slot = (int) fingerprint & mask;
+
+        while (true) {
+            long current = table[slot];
+            if (current == 0) {
+                break;
+            }
+            if (current == fingerprint && (!exact || matches(references[slot], buffer, offset, length))) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = fingerprint;
+        if (exact) {
+            references[slot] = store(EmailNormalizer.normalize(buffer, offset, length));
+        }
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(ByteBuffer buffer, int offset, int length) {
+        long fingerprint = EmailNormalizer.fingerprint(buffer, offset, length);
+        int slot = (int) fingerprint & mask;
+
+        while (true) {
+            long current = table[slot];
+            if (current == 0) {
+                return false;
+            }
+            if (current == fingerprint && (!exact || matches(references[slot], buffer, offset, length))) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = (long) table.length * Long.BYTES;
+        if (exact) {
+            bytes += (long) references.length * Integer.BYTES + (long) pageCount * PAGE_SIZE;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String memoryReport() {
+        return EmailSet.super.memoryReport() + String.format(" [%,d slots, load %.2f%s]",
+            table.length, (double) size / table.length, exact ? ", exact confirmation" : "");
+    }
+
+    /**
+     * @return The open-addressing table itself (0 = empty slot), e.g. for persisting it
+     */
+    long[] table() {
+        return table;
+    }
+
+    private void resize() {
+        long[] oldTable = table;
+        if (oldTable.length == MAX_CAPACITY) {
+            // Doubling would overflow the int array length
+            throw new IllegalStateException("Fingerprint set is full (" + size + " emails in " + MAX_CAPACITY
+                + " slots); join with " + Main.JOIN_PROPERTY + "=grace or deduplicate with "
+                + Main2.DEDUP_BUDGET_PROPERTY + " instead");
+        }
+        int[] oldReferences = references;
+        allocate(oldTable.length * 2);
+
+        for (int i = 0; i < oldTable.length; i++) {
+            long fingerprint = oldTable[i];
+            if (fingerprint == 0) {
+                continue;
+            }
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+            if (exact) {
+                references[slot] = oldReferences[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        if (exact) {
+            references = new int[capacity];
+        }
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD);
+    }
+
+    /**
+     * Appends the address to the arena as a 2-byte length followed by its UTF-8 bytes.
+     */
+    private int store(String email) {
+        byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Email address too long: " + bytes.length + " bytes");
+        }
+
+        if (pageOffset + 2 + bytes.length > PAGE_SIZE) {
+            if (pageCount == MAX_PAGES) {
+                throw new IllegalStateException("Exact confirmation arena is full (2 GB)");
+            }
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+            }
+            pages[pageCount++] = new byte[PAGE_SIZE];
+            pageOffset = 0;
+        }
+
+        int page = pageCount - 1;
+        int reference = page << PAGE_SHIFT | pageOffset;
+        byte[] data = pages[page];
+        data[pageOffset] = (byte) (bytes.length >>> 8);
+        data[pageOffset + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, data, pageOffset + 2, bytes.length);
+        pageOffset += 2 + bytes.length;
+        return reference;
+    }
+
+    /**
+     * Compares the stored normalized address with a raw value. Plain ASCII values are trimmed
+     * and case-folded while comparing; anything else is normalized first.
+     */
+    private boolean matches(int reference, CharSequence rawEmail) {
+        byte[] data = pages[reference >>> PAGE_SHIFT];
+        int offset = reference & (PAGE_SIZE - 1);
+        int length = (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+        int start = EmailNormalizer.trimStart(rawEmail);
+        int end = EmailNormalizer.trimEnd(rawEmail, start);
+
+        for (int i = start; i < end; i++) {
+            if (rawEmail.charAt(i) >= 0x80) {
+                return matchesNormalized(data, offset + 2, length, EmailNormalizer.normalize(rawEmail));
+            }
+        }
+        if (end - start != length) {
+            return false;
+        }
+        for (int i = start, position = offset + 2; i < end; i++, position++) {
+            if (data[position] != EmailNormalizer.foldAscii(rawEmail.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the stored normalized address with a raw UTF-8 slice, byte for byte for plain
+     * ASCII values.
+     */
+    private boolean matches(int reference, ByteBuffer buffer, int valueOffset, int valueLength) {
+        byte[] data = pages[reference >>> PAGE_SHIFT];
+        int offset = reference & (PAGE_SIZE - 1);
+        int length = (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+        int start = EmailNormalizer.trimStart(buffer, valueOffset, valueOffset + valueLength);
+        int end = EmailNormalizer.trimEnd(buffer, start, valueOffset + valueLength);
+
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return matchesNormalized(data, offset + 2, length,
+                    EmailNormalizer.normalize(buffer, valueOffset, valueLength));
+            }
+        }
+        if (end - start != length) {
+            return false;
+        }
+        for (int i = start, position = offset + 2; i < end; i++, position++) {
+            if (data[position] != EmailNormalizer.foldAscii(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares stored UTF-8 bytes with the chars of a normalized address without encoding it
+     * into a new array. ASCII chars compare directly; other chars are encoded on the fly.
+     */
+    private static boolean matchesNormalized(byte[] data, int position, int length, CharSequence email) {
+        int end = position + length;
+
+        for (int i = 0, chars = email.length(); i < chars; i++) {
+            int c = email.charAt(i);
+            if (c >= 0x80) {
+                if (Character.isHighSurrogate((char) c) && i + 1 < chars
+                    && Character.isLowSurrogate(email.charAt(i + 1))) {
+                    c = Character.toCodePoint((char) c, email.charAt(++i));
+                } else if (Character.isSurrogate((char) c)) {
+                    // Unpaired surrogates are encoded as '?' by String.getBytes
+                    c = '?';
+                }
+            }
+
+            if (c < 0x80) {
+                if (position >= end || data[position++] != c) {
+                    return false;
+                }
+                continue;
+            }
+
+            // Encode the code point to UTF-8 and compare byte by byte
+            int byteCount = c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (end - position < byteCount) {
+                return false;
+            }
+            int lead = byteCount == 2 ? 0xC0 : byteCount == 3 ? 0xE0 : 0xF0;
+            if (data[position] != (byte) (lead | c >>> (6 * (byteCount - 1)))) {
+                return false;
+            }
+            for (int k = byteCount - 2; k >= 0; k--) {
+                if (data[position + byteCount - 1 - k] != (byte) (0x80 | (c >>> (6 * k)) & 0x3F)) {
+                    return false;
+                }
+            }
+            position += byteCount;
+        }
+        return position == end;
+    }
+
+    private static int tableSizeFor(long capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Too many emails for one set: " + capacity);
+        }
+        return Integer.highestOneBit((int) Math.max(2, capacity - 1)) << 1;
+    }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only lookup of email addresses, keyed by their {@link EmailNormalizer} form like an
+ * {@link EmailSet}.
+ *
+ * The filter paths of {@link Main} only probe the verified emails, so they depend on this type:
+ * it is implemented by every {@link EmailSet} and by the memory-mapped
+ * {@link VerifiedEmailIndex}, which cannot take new addresses.
+ */
+interface EmailLookup {
+
+    /**
+     * @param email Address, raw or normalized
+     * @return true if the address is in the set
+     */
+    boolean contains(CharSequence email);
+
+    /**
+     * Same as {@link #contains(CharSequence)} for a UTF-8 slice. The default decodes it first.
+     *
+     * @param buffer Input bytes
+     * @param offset Start of the address
+     * @param length Length of the address in bytes
+     * @return true if the address is in the set
+     */
+    default boolean contains(ByteBuffer buffer, int offset, int length) {
+        return contains(EmailNormalizer.decode(buffer, offset, length));
+    }
+
+    /**
+     * @return Number of addresses in the set
+     */
+    int size();
+
+    /**
+     * @return Approximate heap and off-heap bytes held by the set
+     */
+    long memoryBytes();
+
+    /**
+     * Describes the memory footprint of the set, for sizing containers.
+     *
+     * @return One-line report with total and per-address memory
+     */
+    default String memoryReport() {
+        long bytes = memoryBytes();
+        double perEntry = size() > 0 ? (double) bytes / size() : 0;
+        return String.format("%s: %,d emails, %.1f MB (%.1f bytes per email)",
+            getClass().getSimpleName(), size(), bytes / (1024.0 * 1024.0), perEntry);
+    }
+}
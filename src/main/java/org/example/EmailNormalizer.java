@@ -0,0 +1,254 @@
+package org.example;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The one place that defines when two email values are the same address: surrounding
+ * whitespace is ignored (like String.trim()) and case is folded with Locale.ROOT, so matching
+ * does not depend on the default locale of the host (a Turkish locale would otherwise turn 'I'
+ * into a dotless i).
+ *
+ * Besides {@link #normalize(CharSequence)}, which builds the normalized String, the class offers
+ * checks that work on the value as it was read and allocate nothing for plain ASCII addresses:
+ * blank checks, fingerprints and comparison against an already normalized address. Values with
+ * non-ASCII characters fall back to the String based normalization, because full Unicode case
+ * folding can change the length of a string.
+ *
+ * The same checks exist for raw UTF-8 slices of an input buffer, so {@link MappedCsvSource}
+ * values can be matched without decoding them: ASCII bytes are trimmed and case-folded as they
+ * are read and hash exactly like the equal chars. Only a value with a byte above 0x7F is decoded
+ * and takes the String path.
+ */
+final class EmailNormalizer {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private EmailNormalizer() {
+    }
+
+    /**
+     * @param rawEmail Address as read from the file
+     * @return Trimmed, lower-cased address
+     */
+    static String normalize(CharSequence rawEmail) {
+        return rawEmail.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Same as {@code rawEmail.toString().trim().isEmpty()}, without allocating.
+     *
+     * @param rawEmail Value as read from the file
+     * @return true if the value is empty or whitespace only
+     */
+    static boolean isBlank(CharSequence rawEmail) {
+        for (int i = 0, length = rawEmail.length(); i < length; i++) {
+            if (rawEmail.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fingerprints a raw value. Returns the same value as
+     * {@code EmailFingerprintSet.fingerprint(normalize(rawEmail))}.
+     *
+     * @param rawEmail Address as read from the file, possibly with whitespace and upper case
+     * @return Fingerprint of the normalized address, never 0
+     */
+    static long fingerprint(CharSequence rawEmail) {
+        int start = trimStart(rawEmail);
+        int end = trimEnd(rawEmail, start);
+
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            char c = rawEmail.charAt(i);
+            if (c >= 0x80) {
+                return EmailFingerprintSet.fingerprint(normalize(rawEmail));
+            }
+            hash ^= foldAscii(c);
+            hash *= FNV_PRIME;
+        }
+        return EmailFingerprintSet.finish(hash);
+    }
+
+    /**
+     * Compares a raw value with an already normalized address.
+     *
+     * @param rawEmail Address as read from the file
+     * @param normalizedEmail Trimmed, lower-cased address
+     * @return true if the raw value normalizes to normalizedEmail
+     */
+    static boolean matches(CharSequence rawEmail, CharSequence normalizedEmail) {
+        int start = trimStart(rawEmail);
+        int end = trimEnd(rawEmail, start);
+
+        for (int i = start; i < end; i++) {
+            if (rawEmail.charAt(i) >= 0x80) {
+                return normalize(rawEmail).contentEquals(normalizedEmail);
+            }
+        }
+        if (end - start != normalizedEmail.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (foldAscii(rawEmail.charAt(i)) != normalizedEmail.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #isBlank(CharSequence)} for a UTF-8 slice. Bytes up to 0x20 are never part
+     * of a multi-byte sequence, so they are exactly the chars String.trim() removes.
+     *
+     * @param buffer Input bytes
+     * @param offset Start of the value
+     * @param length Length of the value in bytes
+     * @return true if the value is empty or whitespace only
+     */
+    static boolean isBlank(ByteBuffer buffer, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fingerprints a raw UTF-8 slice. Returns the same value as
+     * {@code fingerprint(decode(buffer, offset, length))}.
+     *
+     * @param buffer Input bytes
+     * @param offset Start of the value
+     * @param length Length of the value in bytes
+     * @return Fingerprint of the normalized address, never 0
+     */
+    static long fingerprint(ByteBuffer buffer, int offset, int length) {
+        int start = trimStart(buffer, offset, offset + length);
+        int end = trimEnd(buffer, start, offset + length);
+
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                return fingerprint(decode(buffer, offset, length));
+            }
+            hash ^= foldAscii(b);
+            hash *= FNV_PRIME;
+        }
+        return EmailFingerprintSet.finish(hash);
+    }
+
+    /**
+     * Same as {@code normalize(decode(buffer, offset, length))}, without the decoding step for
+     * plain ASCII.
+     *
+     * @param buffer Input bytes
+     * @param offset Start of the value
+     * @param length Length of the value in bytes
+     * @return Trimmed, lower-cased address
+     */
+    static String normalize(ByteBuffer buffer, int offset, int length) {
+        int start = trimStart(buffer, offset, offset + length);
+        int end = trimEnd(buffer, start, offset + length);
+
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                return normalize(decode(buffer, offset, length));
+            }
+            bytes[i - start] = foldAscii(b);
+        }
+        // ASCII is a subset of Latin-1, the compact String representation
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param buffer Input bytes
+     * @param offset Start of the value
+     * @param length Length of the value in bytes
+     * @return The value decoded as UTF-8
+     * @throws UncheckedIOException if the value is not valid UTF-8
+     */
+    static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        try {
+            return decode(bytes, 0, length);
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 and reports malformed input like the strict decoder of
+     * {@link CommonsCsvSource} instead of replacing it with U+FFFD.
+     *
+     * @param bytes Input bytes
+     * @param offset Start of the value
+     * @param length Length of the value in bytes
+     * @return The value decoded as UTF-8
+     * @throws CharacterCodingException if the value is not valid UTF-8
+     */
+    static String decode(byte[] bytes, int offset, int length) throws CharacterCodingException {
+        String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        // The fast decoder turns malformed input into U+FFFD; only then is the strict one needed
+        // to tell it from an encoded U+FFFD
+        if (value.indexOf('\uFFFD') >= 0) {
+            StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes, offset, length));
+        }
+        return value;
+    }
+
+    static int trimStart(CharSequence value) {
+        int start = 0;
+        int length = value.length();
+        while (start < length && value.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    static int trimEnd(CharSequence value, int start) {
+        int end = value.length();
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    static int trimStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    static char foldAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    static byte foldAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of email addresses, keyed by their {@link EmailNormalizer} form: values may be passed as
+ * read from the file and are matched ignoring surrounding whitespace and case.
+ *
+ * Used for the verified email lookup in {@link Main} and the deduplication in {@link Main2}.
+ * The implementation is picked by a system property ('verified.set' for Main,
+ * 'combine.dedup.set' for Main2):
+ * - 'hashset' (default) - java.util.HashSet of Strings
+ * - 'fingerprint' - open addressing over 64-bit fingerprints, see {@link EmailFingerprintSet}
+ * - 'exact' - fingerprints plus an exact comparison against the stored address bytes
+ * - 'concurrent' - fingerprints in lock-striped segments, safe for concurrent inserts, see
+ *   {@link ConcurrentFingerprintSet}
+ *
+ * Addresses can also be passed as raw UTF-8 slices of an input buffer, as the mapped tokenizer
+ * reads them. The fingerprint sets hash and compare those bytes directly; see
+ * {@link EmailNormalizer} for when a value still has to be decoded.
+ *
+ * Lookups are declared by {@link EmailLookup}, which code that only probes the verified emails
+ * depends on.
+ */
+interface EmailSet extends EmailLookup {
+
+    /** System property selecting the set implementation. */
+    String SET_PROPERTY = "verified.set";
+
+    /**
+     * Creates an empty set of the kind selected by 'verified.set'.
+     *
+     * @param expectedSize Number of addresses the set is expected to hold, used for pre-sizing
+     * @return Empty set
+     */
+    static EmailSet create(int expectedSize) {
+        return create(System.getProperty(SET_PROPERTY, "hashset"), expectedSize);
+    }
+
+    /**
+     * Creates an empty set of the given kind.
+     *
+     * @param kind 'hashset', 'fingerprint', 'exact' or 'concurrent'
+     * @param expectedSize Number of addresses the set is expected to hold, used for pre-sizing
+     * @return Empty set
+     */
+    static EmailSet create(String kind, int expectedSize) {
+        switch (kind) {
+            case "hashset":
+                return new HashEmailSet();
+            case "fingerprint":
+                return new EmailFingerprintSet(expectedSize, false);
+            case "exact":
+                return new EmailFingerprintSet(expectedSize, true);
+            case "concurrent":
+                return new ConcurrentFingerprintSet(expectedSize, false);
+            default:
+                throw new IllegalArgumentException("Unknown email set kind: " + kind);
+        }
+    }
+
+    /**
+     * @param email Address, raw or normalized
+     * @return true if the address was not in the set yet
+     */
+    boolean add(CharSequence email);
+
+    /**
+     * Same as {@link #add(CharSequence)} for a UTF-8 slice. The default decodes it first.
+     *
+     * @param buffer Input bytes
+     * @param offset Start of the address
+     * @param length Length of the address in bytes
+     * @return true if the address was not in the set yet
+     */
+    default boolean add(ByteBuffer buffer, int offset, int length) {
+        return add(EmailNormalizer.decode(buffer, offset, length));
+    }
+
+    /**
+     * The original java.util.HashSet based set. Every call builds the normalized String, so
+     * unlike the fingerprint set it allocates per lookup. Memory is estimated from the usual
+     * 64-bit JVM layout with compressed oops: a HashMap.Node, a String with its Latin-1 byte[]
+     * and one table slot per entry.
+     */
+    final class HashEmailSet implements EmailSet {
+
+        private static final int NODE_BYTES = 32;
+        private static final int STRING_BYTES = 24;
+        private static final int ARRAY_HEADER_BYTES = 16;
+
+        private final Set<String> emails = new HashSet<>();
+        private long characters;
+
+        @Override
+        public boolean add(CharSequence email) {
+            return addNormalized(EmailNormalizer.normalize(email));
+        }
+
+        @Override
+        public boolean add(ByteBuffer buffer, int offset, int length) {
+            return addNormalized(EmailNormalizer.normalize(buffer, offset, length));
+        }
+
+        @Override
+        public boolean contains(CharSequence email) {
+            return emails.contains(EmailNormalizer.normalize(email));
+        }
+
+        @Override
+        public boolean contains(ByteBuffer buffer, int offset, int length) {
+            return emails.contains(EmailNormalizer.normalize(buffer, offset, length));
+        }
+
+        private boolean addNormalized(String normalizedEmail) {
+            if (emails.add(normalizedEmail)) {
+                characters += normalizedEmail.length();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return emails.size();
+        }
+
+        @Override
+        public long memoryBytes() {
+            long entries = emails.size();
+            long tableSlots = Integer.highestOneBit((int) Math.max(1, entries * 4 / 3)) * 2L;
+            long arrays = entries * ARRAY_HEADER_BYTES + ((characters + 7) & ~7L);
+            return entries * (NODE_BYTES + STRING_BYTES) + arrays + tableSlots * 4;
+        }
+    }
+}
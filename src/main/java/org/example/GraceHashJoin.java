@@ -0,0 +1,461 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Disk-based join of scraped.csv against checked.csv, for verified lists that do not fit into
+ * memory.
+ *
+ * Both files are split into the same number of partitions by the fingerprint of their emails,
+ * so a scraped row can only match verified emails of its own partition:
+ * - checked.csv: every verified email goes to its partition file
+ * - scraped.csv: every row with an email goes to its partition file with its row number and
+ *   the values of the kept columns
+ *
+ * The partitions are then joined one pair at a time: the verified emails of the partition are
+ * loaded into an {@link EmailSet} of the 'verified.set' kind and the partition's scraped rows
+ * are probed against it. Only one partition's verified emails are in memory at any time. The
+ * matched rows of every partition keep their row numbers, so a final merge of all partitions
+ * writes them in scraped.csv order, exactly as the in-memory filter would.
+ *
+ * A partition whose verified emails outgrow the budget is split again, both files by the next
+ * fingerprint bits, and its parts are joined one at a time and merged back into one file of
+ * matched rows. At most {@link #MAX_FANOUT} partition files are open at once, and their
+ * buffers count against the budget: the fan-out gets at most a quarter of it, and the set of a
+ * partition shares it with the three files open while the partition is joined.
+ *
+ * Values of a {@link MappedCsvSource} are spilled as their raw UTF-8 bytes and emails are
+ * probed as bytes, so only the rows that match are ever decoded into Strings.
+ */
+final class GraceHashJoin implements ScrapedJoin {
+
+    /** Most partition files written or merged at once. */
+    static final int MAX_FANOUT = 64;
+
+    private static final int JOIN_BUFFERS = 3;
+    private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+    private final Path checkedFile;
+    private final long setBudgetBytes;
+    private final int fanoutBits;
+    private final int partitionBits;
+    private final Path spillParent;
+
+    private Path spillDirectory;
+    private int nextSpillFile;
+    private int repartitioned;
+    private long verifiedEmails;
+    private String largestSet;
+    private long largestSetSize = -1;
+    private byte[] scratch = new byte[256];
+    private ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+
+    /**
+     * @param checkedFile Path to the checked.csv file
+     * @param budgetBytes Memory available for the verified emails of one partition and the
+     *                    buffers of the partition files
+     * @param spillParent Directory in which the partition files are created
+     * @throws IOException if the size of checked.csv cannot be read
+     */
+    GraceHashJoin(Path checkedFile, long budgetBytes, Path spillParent) throws IOException {
+        this.checkedFile = checkedFile;
+        this.spillParent = spillParent;
+        this.setBudgetBytes = Math.max(budgetBytes - JOIN_BUFFERS * SpillFiles.BUFFER_SIZE, budgetBytes / 2);
+
+        long fanout = Math.min(MAX_FANOUT, budgetBytes / 4 / SpillFiles.BUFFER_SIZE);
+        this.fanoutBits = Math.max(1, 63 - Long.numberOfLeadingZeros(Math.max(fanout, 1)));
+
+        // An email costs more in a set than in the CSV file, so each partition only gets
+        // half of the set budget in file bytes; larger partitions are split again when joined
+        long checkedBytes = Files.size(checkedFile);
+        int partitions = 2;
+        while (partitions < 1 << fanoutBits && checkedBytes / partitions > setBudgetBytes / 2) {
+            partitions <<= 1;
+        }
+        this.partitionBits = Integer.numberOfTrailingZeros(partitions);
+    }
+
+    /**
+     * @return Number of partitions of each file before any is split again
+     */
+    int partitions() {
+        return 1 << partitionBits;
+    }
+
+    @Override
+    public void filter(CsvSource csvSource, CsvOutput output, int emailIndex, int[] projection,
+                       Main.FilterCounts counts) throws IOException {
+        spillDirectory = Files.createTempDirectory(spillParent, "grace-join");
+        try {
+            Path[] checked = newSpillFiles(partitions());
+            Path[] scraped = newSpillFiles(partitions());
+            long[] checkedRows = partitionChecked(checked);
+            long[] scrapedRows = partitionScraped(csvSource, emailIndex, projection, counts, scraped);
+
+            Path[] matched = newSpillFiles(partitions());
+            long[] matchedRows = new long[partitions()];
+            for (int p = 0; p < partitions(); p++) {
+                matchedRows[p] = join(checked[p], checkedRows[p], scraped[p], scrapedRows[p], partitionBits,
+                    matched[p]);
+            }
+            System.out.println("Grace join: " + verifiedEmails + " checked emails in " + partitions()
+                + " partitions (" + repartitioned + " split again), largest partition set: " + largestSet);
+
+            PriorityQueue<MatchedReader> queue = openMatched(matched, matchedRows);
+            try {
+                while (!queue.isEmpty()) {
+                    MatchedReader reader = queue.poll();
+                    output.printRecord(SpillFiles.readRow(reader.in));
+                    counts.filteredRows++;
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } finally {
+                for (MatchedReader reader : queue) {
+                    reader.close();
+                }
+            }
+        } finally {
+            SpillFiles.deleteDirectory(spillDirectory);
+            spillDirectory = null;
+        }
+    }
+
+    /**
+     * Writes the verified emails of checked.csv to their partitions, with the same record
+     * rules as {@link Main#readCheckedEmails}.
+     *
+     * @return Number of emails written to each partition
+     */
+    private long[] partitionChecked(Path[] partitions) throws IOException {
+        long[] rows = new long[partitions.length];
+        DataOutputStream[] outs = new DataOutputStream[partitions.length];
+        try (CsvSource csvSource = CsvSource.open(checkedFile)) {
+            for (int p = 0; p < outs.length; p++) {
+                outs[p] = SpillFiles.create(partitions[p]);
+            }
+            while (csvSource.nextRecord()) {
+                String email = Main.checkedEmail(csvSource);
+                if (email != null) {
+                    int p = partition(EmailNormalizer.fingerprint(email), 0, partitionBits);
+                    SpillFiles.writeString(outs[p], email);
+                    rows[p]++;
+                }
+            }
+        } finally {
+            close(outs);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the scraped rows that have an email to their partitions: row number, email and
+     * the values of the kept columns.
+     *
+     * @return Number of rows written to each partition
+     */
+    private long[] partitionScraped(CsvSource csvSource, int emailIndex, int[] projection,
+                                    Main.FilterCounts counts, Path[] partitions) throws IOException {
+        MappedCsvSource mappedSource = csvSource instanceof MappedCsvSource ? (MappedCsvSource) csvSource : null;
+        long[] rows = new long[partitions.length];
+        DataOutputStream[] outs = new DataOutputStream[partitions.length];
+        try {
+            for (int p = 0; p < outs.length; p++) {
+                outs[p] = SpillFiles.create(partitions[p]);
+            }
+            while (csvSource.nextRecord()) {
+                long sequence = counts.totalRows++;
+                DataOutputStream out;
+                if (mappedSource != null && mappedSource.isSlice(emailIndex)) {
+                    ByteBuffer buffer = mappedSource.buffer();
+                    int offset = mappedSource.fieldOffset(emailIndex);
+                    int length = mappedSource.fieldLength(emailIndex);
+                    if (EmailNormalizer.isBlank(buffer, offset, length)) {
+                        continue;
+                    }
+                    int p = partition(EmailNormalizer.fingerprint(buffer, offset, length), 0, partitionBits);
+                    out = outs[p];
+                    out.writeLong(sequence);
+                    writeSlice(out, buffer, offset, length);
+                    rows[p]++;
+                } else {
+                    String email = csvSource.get(emailIndex);
+                    if (EmailNormalizer.isBlank(email)) {
+                        continue;
+                    }
+                    int p = partition(EmailNormalizer.fingerprint(email), 0, partitionBits);
+                    out = outs[p];
+                    out.writeLong(sequence);
+                    SpillFiles.writeString(out, email);
+                    rows[p]++;
+                }
+
+                // Same layout as SpillFiles.writeRow
+                out.writeInt(projection.length);
+                for (int column : projection) {
+                    if (mappedSource != null && mappedSource.isSlice(column)) {
+                        writeSlice(out, mappedSource.buffer(), mappedSource.fieldOffset(column),
+                            mappedSource.fieldLength(column));
+                    } else {
+                        SpillFiles.writeString(out, csvSource.get(column));
+                    }
+                }
+            }
+        } finally {
+            close(outs);
+        }
+        return rows;
+    }
+
+    /**
+     * Joins one pair of partition files into a file of the matched rows, sorted by row number.
+     * Both input files are deleted.
+     *
+     * @param usedBits Fingerprint bits that already picked this partition
+     * @return Number of matched rows
+     */
+    private long join(Path checked, long checkedRows, Path scraped, long scrapedRows, int usedBits,
+                      Path matched) throws IOException {
+        EmailSet checkedEmails = EmailSet.create(0);
+        try (DataInputStream in = SpillFiles.open(checked)) {
+            for (long row = 0; row < checkedRows; row++) {
+                int length = readBytes(in);
+                checkedEmails.add(scratchBuffer, 0, length);
+                if (checkedEmails.size() % BUDGET_CHECK_INTERVAL == 0 && checkedEmails.memoryBytes() > setBudgetBytes) {
+                    checkedEmails = null;
+                    break;
+                }
+            }
+        }
+        if (checkedEmails == null) {
+            return split(checked, checkedRows, scraped, scrapedRows, usedBits, matched);
+        }
+        verifiedEmails += checkedEmails.size();
+        if (checkedEmails.size() > largestSetSize) {
+            largestSetSize = checkedEmails.size();
+            largestSet = checkedEmails.memoryReport();
+        }
+
+        long matchedRows = 0;
+        try (DataInputStream in = SpillFiles.open(scraped);
+             DataOutputStream out = SpillFiles.create(matched)) {
+            for (long row = 0; row < scrapedRows; row++) {
+                long sequence = in.readLong();
+                int length = readBytes(in);
+                if (checkedEmails.contains(scratchBuffer, 0, length)) {
+                    out.writeLong(sequence);
+                    SpillFiles.copyRow(in, out);
+                    matchedRows++;
+                } else {
+                    SpillFiles.skipRow(in);
+                }
+            }
+        }
+        Files.delete(checked);
+        Files.delete(scraped);
+        return matchedRows;
+    }
+
+    /**
+     * Splits a partition whose verified emails do not fit into the budget by the next
+     * fingerprint bits, joins the parts and merges their matched rows.
+     */
+    private long split(Path checked, long checkedRows, Path scraped, long scrapedRows, int usedBits,
+                       Path matched) throws IOException {
+        int bits = Math.min(fanoutBits, Long.SIZE - usedBits);
+        if (bits == 0) {
+            throw new IOException("Verified emails of one grace join partition do not fit into "
+                + setBudgetBytes + " bytes; raise " + Main.BUDGET_PROPERTY);
+        }
+        repartitioned++;
+        int parts = 1 << bits;
+
+        Path[] checkedParts = newSpillFiles(parts);
+        long[] checkedPartRows = new long[parts];
+        DataOutputStream[] outs = new DataOutputStream[parts];
+        try (DataInputStream in = SpillFiles.open(checked)) {
+            for (int p = 0; p < parts; p++) {
+                outs[p] = SpillFiles.create(checkedParts[p]);
+            }
+            for (long row = 0; row < checkedRows; row++) {
+                int length = readBytes(in);
+                int p = partition(EmailNormalizer.fingerprint(scratchBuffer, 0, length), usedBits, bits);
+                outs[p].writeInt(length);
+                outs[p].write(scratch, 0, length);
+                checkedPartRows[p]++;
+            }
+        } finally {
+            close(outs);
+        }
+        Files.delete(checked);
+
+        Path[] scrapedParts = newSpillFiles(parts);
+        long[] scrapedPartRows = new long[parts];
+        try (DataInputStream in = SpillFiles.open(scraped)) {
+            for (int p = 0; p < parts; p++) {
+                outs[p] = SpillFiles.create(scrapedParts[p]);
+            }
+            for (long row = 0; row < scrapedRows; row++) {
+                long sequence = in.readLong();
+                int length = readBytes(in);
+                int p = partition(EmailNormalizer.fingerprint(scratchBuffer, 0, length), usedBits, bits);
+                outs[p].writeLong(sequence);
+                outs[p].writeInt(length);
+                outs[p].write(scratch, 0, length);
+                SpillFiles.copyRow(in, outs[p]);
+                scrapedPartRows[p]++;
+            }
+        } finally {
+            close(outs);
+        }
+        Files.delete(scraped);
+
+        Path[] matchedParts = newSpillFiles(parts);
+        long[] matchedPartRows = new long[parts];
+        for (int p = 0; p < parts; p++) {
+            matchedPartRows[p] = join(checkedParts[p], checkedPartRows[p], scrapedParts[p], scrapedPartRows[p],
+                usedBits + bits, matchedParts[p]);
+        }
+
+        // Merge the parts back into one file sorted by row number
+        long matchedRows = 0;
+        PriorityQueue<MatchedReader> queue = openMatched(matchedParts, matchedPartRows);
+        try (DataOutputStream out = SpillFiles.create(matched)) {
+            while (!queue.isEmpty()) {
+                MatchedReader reader = queue.poll();
+                out.writeLong(reader.sequence);
+                SpillFiles.copyRow(reader.in, out);
+                matchedRows++;
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (MatchedReader reader : queue) {
+                reader.close();
+            }
+        }
+        for (Path part : matchedParts) {
+            Files.delete(part);
+        }
+        return matchedRows;
+    }
+
+    /**
+     * Opens matched row files for a k-way merge on their row numbers. Each file is already
+     * sorted by row number, so polling the queue restores scraped.csv order.
+     */
+    private static PriorityQueue<MatchedReader> openMatched(Path[] files, long[] rows) throws IOException {
+        PriorityQueue<MatchedReader> queue = new PriorityQueue<>(Comparator.comparingLong(r -> r.sequence));
+        try {
+            for (int p = 0; p < files.length; p++) {
+                MatchedReader reader = new MatchedReader(files[p], rows[p]);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } catch (IOException e) {
+            for (MatchedReader reader : queue) {
+                reader.close();
+            }
+            throw e;
+        }
+        return queue;
+    }
+
+    private Path[] newSpillFiles(int count) {
+        Path[] files = new Path[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = spillDirectory.resolve("part-" + nextSpillFile++);
+        }
+        return files;
+    }
+
+    /**
+     * Writes a value slice in the layout of {@link SpillFiles#writeString}, without decoding it.
+     */
+    private void writeSlice(DataOutputStream out, ByteBuffer buffer, int offset, int length) throws IOException {
+        ensureScratch(length);
+        buffer.get(offset, scratch, 0, length);
+        out.writeInt(length);
+        out.write(scratch, 0, length);
+    }
+
+    /**
+     * Reads a value written by {@link SpillFiles#writeString} into the scratch buffer.
+     *
+     * @return Length of the value in bytes
+     */
+    private int readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        ensureScratch(length);
+        in.readFully(scratch, 0, length);
+        return length;
+    }
+
+    private void ensureScratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+            scratchBuffer = ByteBuffer.wrap(scratch);
+        }
+    }
+
+    /**
+     * @param usedBits Fingerprint bits already used by the levels above
+     * @param bits Bits picking the partition at this level
+     */
+    private static int partition(long fingerprint, int usedBits, int bits) {
+        return (int) (fingerprint >>> (Long.SIZE - usedBits - bits)) & ((1 << bits) - 1);
+    }
+
+    private static void close(DataOutputStream[] outs) throws IOException {
+        for (DataOutputStream out : outs) {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the matched rows of one file, in row number order. After {@link #advance()} the
+     * stream is positioned on the values of the current row.
+     */
+    private static final class MatchedReader implements Closeable {
+
+        final DataInputStream in;
+        private long remaining;
+        long sequence;
+
+        MatchedReader(Path file, long rows) throws IOException {
+            this.in = SpillFiles.open(file);
+            this.remaining = rows;
+        }
+
+        /**
+         * Moves to the next row; the values of the previous row must have been read.
+         */
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            remaining--;
+            sequence = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
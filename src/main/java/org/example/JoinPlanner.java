@@ -0,0 +1,285 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Picks how {@link Main} joins scraped.csv with checked.csv, and prints the plan before the
+ * run.
+ *
+ * Both files are sampled first: the first {@link #SAMPLE_RECORDS} records give the average
+ * record size (and from the file size the record count), the share of records with an email,
+ * the share of distinct emails, whether the emails are sorted, and the memory an email costs
+ * in the 'verified.set' kind. Each strategy is then costed in bytes of work: every input byte
+ * read or spilled, plus the bytes of the set it builds. Strategies whose set would not fit
+ * into the 'verified.budget.mb' heap budget are ruled out, and the cheapest remaining one
+ * wins:
+ * - merge: both files streamed once, no set; only when both are sorted by email
+ * - hash: checked.csv loaded into a set, scraped.csv streamed against it; 'bloom' when the
+ *   set is too big to stay in cache, or 'verified.bloom' asks for it
+ * - reverse: scraped.csv loaded into a set, checked.csv streamed, scraped.csv read again
+ *   (see {@link ReverseHashJoin})
+ * - grace: both files partitioned on disk and joined partition by partition (see
+ *   {@link GraceHashJoin}), always possible
+ *
+ * Sampling only runs when 'filter.join' is set: 'auto' picks the cheapest strategy, any other
+ * value forces one and still prints the plan and its estimates. Without 'filter.join' only the
+ * size of checked.csv is looked at: the grace join runs once it is larger than the budget and
+ * 'verified.index' is off, else the in-memory set, Bloom-filtered with 'verified.bloom'.
+ * 'filter.join=hash' keeps the in-memory set for any size.
+ */
+final class JoinPlanner {
+
+    /** Number of records sampled at the start of each file. */
+    static final int SAMPLE_RECORDS = 10_000;
+
+    /** Set size above which probes mostly miss the CPU caches and a Bloom filter pays off. */
+    private static final long BLOOM_SET_BYTES = 64L << 20;
+
+    /** Memory per email assumed when a sample has no email to measure. */
+    private static final double DEFAULT_EMAIL_BYTES = 100;
+
+    /** Join strategies, by their 'filter.join' name. */
+    enum Strategy {
+        HASH("hash"), BLOOM("bloom"), REVERSE("reverse"), GRACE("grace"), MERGE("merge");
+
+        final String property;
+
+        Strategy(String property) {
+            this.property = property;
+        }
+
+        static Strategy of(String property) {
+            for (Strategy strategy : values()) {
+                if (strategy.property.equals(property)) {
+                    return strategy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown " + Main.JOIN_PROPERTY + ": " + property);
+        }
+    }
+
+    private JoinPlanner() {
+    }
+
+    /**
+     * Picks a strategy and prints the plan, sampling the inputs if 'filter.join' is set.
+     *
+     * @param checkedFile Path to the checked.csv file
+     * @param scrapedFile Path to the scraped.csv file
+     * @param outputFile Path for the filtered output file, next to which partitions are spilled
+     * @param allowMerge false after the merge join failed, to plan the run it falls back to
+     * @return The chosen plan
+     * @throws IOException if the inputs cannot be sampled
+     */
+    static Plan plan(Path checkedFile, Path scrapedFile, Path outputFile, boolean allowMerge) throws IOException {
+        long budgetBytes = Long.getLong(Main.BUDGET_PROPERTY, Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+        String join = System.getProperty(Main.JOIN_PROPERTY);
+        if (join == null) {
+            return defaultPlan(checkedFile, outputFile, budgetBytes);
+        }
+
+        Sample checked = Sample.read(checkedFile, true);
+        Sample scraped = Sample.read(scrapedFile, false);
+
+        // The persistent index is mapped, so the verified emails then cost no heap
+        long checkedSetBytes = Boolean.getBoolean(Main.INDEX_PROPERTY) ? 0 : checked.setBytes();
+        long scrapedSetBytes = scraped.setBytes();
+        long inputBytes = checked.fileBytes + scraped.fileBytes;
+
+        long[] costs = new long[Strategy.values().length];
+        costs[Strategy.MERGE.ordinal()] = allowMerge && checked.sorted && scraped.sorted ? inputBytes : -1;
+        costs[Strategy.HASH.ordinal()] = checkedSetBytes <= budgetBytes ? inputBytes + checkedSetBytes : -1;
+        costs[Strategy.REVERSE.ordinal()] = scrapedSetBytes <= budgetBytes
+            ? inputBytes + scraped.fileBytes + scrapedSetBytes : -1;
+        costs[Strategy.GRACE.ordinal()] = 3 * inputBytes + checked.setBytes();
+
+        Strategy strategy;
+        String reason;
+        if (join.equals("auto") || !allowMerge && join.equals(Strategy.MERGE.property)) {
+            strategy = Strategy.GRACE;
+            for (Strategy candidate : new Strategy[] {Strategy.MERGE, Strategy.HASH, Strategy.REVERSE}) {
+                long cost = costs[candidate.ordinal()];
+                if (cost >= 0 && cost < costs[strategy.ordinal()]) {
+                    strategy = candidate;
+                }
+            }
+            reason = "lowest estimated cost";
+            if (strategy == Strategy.HASH && (Boolean.getBoolean(Main.BLOOM_PROPERTY) || checkedSetBytes > BLOOM_SET_BYTES)) {
+                strategy = Strategy.BLOOM;
+                reason += Boolean.getBoolean(Main.BLOOM_PROPERTY) ? ", Bloom filter enabled by "
+                    + Main.BLOOM_PROPERTY : ", verified set exceeds the cache-friendly size";
+            }
+        } else {
+            strategy = Strategy.of(join);
+            reason = "forced by " + Main.JOIN_PROPERTY;
+            if (strategy == Strategy.HASH && Boolean.getBoolean(Main.BLOOM_PROPERTY)) {
+                strategy = Strategy.BLOOM;
+                reason += ", Bloom filter enabled by " + Main.BLOOM_PROPERTY;
+            }
+        }
+
+        System.out.println("Join plan: " + strategy.property + " (" + reason + ")");
+        System.out.println("  - checked.csv: " + checked.describe());
+        System.out.println("  - scraped.csv: " + scraped.describe());
+        StringBuilder estimates = new StringBuilder();
+        for (Strategy candidate : new Strategy[] {Strategy.MERGE, Strategy.HASH, Strategy.REVERSE, Strategy.GRACE}) {
+            long cost = costs[candidate.ordinal()];
+            estimates.append(estimates.length() > 0 ? ", " : "").append(candidate.property).append(' ')
+                .append(cost >= 0 ? megabytes(cost) : "n/a");
+        }
+        System.out.println("  - heap budget " + megabytes(budgetBytes) + ", estimated cost: " + estimates);
+
+        switch (strategy) {
+            case MERGE:
+                return new Plan(strategy, new SortMergeJoin(checkedFile), false);
+            case REVERSE:
+                return new Plan(strategy, new ReverseHashJoin(checkedFile, scrapedFile), false);
+            case GRACE:
+                GraceHashJoin graceJoin = new GraceHashJoin(checkedFile, budgetBytes,
+                    outputFile.toAbsolutePath().getParent());
+                System.out.println("  - grace hash join with " + graceJoin.partitions() + " partitions");
+                return new Plan(strategy, graceJoin, false);
+            case BLOOM:
+                return new Plan(strategy, null, true);
+            default:
+                return new Plan(strategy, null, false);
+        }
+    }
+
+    /**
+     * Plans a run without 'filter.join' from the size of checked.csv alone, without sampling:
+     * the grace join once checked.csv is larger than the budget and the persistent index is
+     * not used, else the in-memory set, Bloom-filtered with 'verified.bloom'.
+     */
+    private static Plan defaultPlan(Path checkedFile, Path outputFile, long budgetBytes) throws IOException {
+        long checkedBytes = Files.size(checkedFile);
+        if (!Boolean.getBoolean(Main.INDEX_PROPERTY) && checkedBytes > budgetBytes) {
+            GraceHashJoin graceJoin = new GraceHashJoin(checkedFile, budgetBytes,
+                outputFile.toAbsolutePath().getParent());
+            System.out.println("Join plan: grace (checked.csv of " + megabytes(checkedBytes)
+                + " exceeds the heap budget of " + megabytes(budgetBytes) + ")");
+            System.out.println("  - grace hash join with " + graceJoin.partitions() + " partitions");
+            return new Plan(Strategy.GRACE, graceJoin, false);
+        }
+        boolean bloom = Boolean.getBoolean(Main.BLOOM_PROPERTY);
+        return new Plan(bloom ? Strategy.BLOOM : Strategy.HASH, null, bloom);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * A chosen strategy, ready to run.
+     */
+    static final class Plan {
+        final Strategy strategy;
+        /** Join replacing the in-memory verified set, or null for 'hash' and 'bloom'. */
+        final ScrapedJoin join;
+        /** Whether the in-memory verified set gets a Bloom filter pre-check. */
+        final boolean bloom;
+
+        Plan(Strategy strategy, ScrapedJoin join, boolean bloom) {
+            this.strategy = strategy;
+            this.join = join;
+            this.bloom = bloom;
+        }
+    }
+
+    /**
+     * What the first records of an input file tell about the whole file.
+     */
+    static final class Sample {
+        long fileBytes;
+        long records;
+        long emails;
+        long distinct;
+        long sampledBytes;
+        boolean complete;
+        boolean sorted = true;
+        double emailBytes = DEFAULT_EMAIL_BYTES;
+
+        /**
+         * @param file CSV file with a header record
+         * @param checked true for checked.csv (email in the second column), false for
+         *                scraped.csv (email column found by its header name)
+         */
+        static Sample read(Path file, boolean checked) throws IOException {
+            Sample sample = new Sample();
+            sample.fileBytes = Files.size(file);
+            Set<String> keys = new HashSet<>();
+            EmailSet set = EmailSet.create(0);
+
+            try (CsvSource csvSource = CsvSource.open(file)) {
+                int emailIndex = checked ? 1 : csvSource.indexOf(Main.findEmailColumn(csvSource.getHeaderNames()));
+                String previous = null;
+                while (sample.records < SAMPLE_RECORDS && csvSource.nextRecord()) {
+                    sample.records++;
+                    // Values plus delimiters and line break, close to the bytes of ASCII records
+                    sample.sampledBytes += csvSource.size() + 1;
+                    for (int i = 0; i < csvSource.size(); i++) {
+                        sample.sampledBytes += csvSource.get(i).length();
+                    }
+
+                    String email = checked ? Main.checkedEmail(csvSource) : csvSource.get(emailIndex);
+                    if (email == null || EmailNormalizer.isBlank(email)) {
+                        continue;
+                    }
+                    sample.emails++;
+                    String key = EmailNormalizer.normalize(email);
+                    if (keys.add(key)) {
+                        set.add(email);
+                    }
+                    if (previous != null && key.compareTo(previous) < 0) {
+                        sample.sorted = false;
+                    }
+                    previous = key;
+                }
+                sample.complete = !csvSource.nextRecord();
+            }
+
+            sample.distinct = keys.size();
+            if (set.size() > 0) {
+                sample.emailBytes = (double) set.memoryBytes() / set.size();
+            }
+            return sample;
+        }
+
+        /**
+         * @return Estimated number of records in the whole file
+         */
+        long estimatedRecords() {
+            if (complete || sampledBytes == 0) {
+                return records;
+            }
+            return (long) ((double) fileBytes * records / sampledBytes);
+        }
+
+        /**
+         * @return Estimated number of distinct emails in the whole file
+         */
+        long estimatedDistinct() {
+            if (complete || records == 0) {
+                return distinct;
+            }
+            return (long) ((double) estimatedRecords() * distinct / records);
+        }
+
+        /**
+         * @return Estimated memory of a set holding all distinct emails of the file
+         */
+        long setBytes() {
+            return (long) (estimatedDistinct() * emailBytes);
+        }
+
+        String describe() {
+            return String.format("%s, ~%,d records, ~%,d distinct emails, %s, set ~%s (%.0f bytes per email)",
+                megabytes(fileBytes), estimatedRecords(), estimatedDistinct(),
+                sorted ? "sorted by email" : "unsorted", megabytes(setBytes()), emailBytes);
+        }
+    }
+}
@@ -1,17 +1,13 @@
 package org.example;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
-
 import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -27,9 +23,73 @@ import java.util.Set;
  * (Followers, Following, Tweets, Profile picture link, Screen name, Bio).
  *
  * Output: 'filtered_scraped.csv' containing only verified email records with cleaned columns.
+ *
+ * Input files are read through {@link CsvSource}; set 'csv.tokenizer=mapped' to use the
+ * zero-copy memory-mapped tokenizer instead of Apache Commons CSV; the output is written through
+ * {@link CsvOutput}, where 'csv.writer=utf8' replaces the CSVPrinter. The verified emails are
+ * held in an {@link EmailSet}; set 'verified.set=fingerprint' (or 'exact') to use the compact
+ * fingerprint table instead of a HashSet. With 'verified.bloom=true' a blocked Bloom filter
+ * ('verified.bloom.fpp' sets its false-positive rate) rejects most unverified rows before the
+ * set is probed. With 'verified.index=true' the verified emails are loaded from a persistent
+ * memory-mapped index next to checked.csv that is rebuilt whenever checked.csv changes.
+ * Set 'filter.threads' to a value above 1 to filter scraped.csv in a pipeline of a reader,
+ * that many parser threads and a writer (see {@link PipelinedScrapedFilter}), or
+ * 'filter.split=true' to cut it into byte ranges filtered on all cores
+ * (see {@link SplitScrapedFilter}); 'filter.unordered=true' lets both write the output out of
+ * input order. 'filter.passthrough=true' copies the verified rows of the mapped tokenizer to
+ * the output byte for byte (see {@link RawRecordWriter}). {@link JoinPlanner} decides the join
+ * before the run. By default the verified emails are loaded into memory, unless checked.csv is
+ * larger than the 'verified.budget.mb' heap budget and 'verified.index' is off: then both files
+ * are joined on disk ({@link GraceHashJoin}). With 'filter.join=auto' it samples both files and
+ * picks the cheapest join that fits into the budget: the in-memory set (optionally
+ * Bloom-filtered), a set of the scraped emails instead ({@link ReverseHashJoin}), a merge of two
+ * sorted files ({@link SortMergeJoin}) or the join on disk. Other 'filter.join' values force a
+ * join; 'filter.join=hash' keeps the in-memory set whatever the size of checked.csv.
  */
 public class Main {
 
+    // Columns to remove from scraped CSV (based on actual column names)
+    static final Set<String> COLUMNS_TO_REMOVE = Set.of(
+        "Followers", "Following", "Tweets",
+        "Profile picture link", "Screen name", "Bio"
+    );
+
+    /** System property enabling the Bloom filter pre-check. */
+    static final String BLOOM_PROPERTY = "verified.bloom";
+
+    /** System property with the target false-positive rate of the Bloom filter. */
+    static final String BLOOM_FPP_PROPERTY = "verified.bloom.fpp";
+
+    /** System property enabling the persistent verified email index. */
+    static final String INDEX_PROPERTY = "verified.index";
+
+    /** System property overriding the index location (default: checked.csv.idx). */
+    static final String INDEX_FILE_PROPERTY = "verified.index.file";
+
+    /** System property selecting the number of parser threads; 1 keeps the single-threaded filter. */
+    static final String FILTER_THREADS_PROPERTY = "filter.threads";
+
+    /** System property enabling the split-parse mode for large scraped files. */
+    static final String FILTER_SPLIT_PROPERTY = "filter.split";
+
+    /** System property letting the multi-threaded filters write blocks as they finish, out of input order. */
+    static final String FILTER_UNORDERED_PROPERTY = "filter.unordered";
+
+    /** System property copying verified rows byte for byte instead of reformatting them. */
+    static final String FILTER_PASSTHROUGH_PROPERTY = "filter.passthrough";
+
+    /**
+     * System property forcing the join: 'hash', 'bloom', 'reverse', 'grace' or 'merge'; 'auto'
+     * plans it. Unset, the grace join runs only when checked.csv exceeds the budget.
+     */
+    static final String JOIN_PROPERTY = "filter.join";
+
+    /** System property: rerun without the merge join when an input turns out unsorted (default true). */
+    static final String MERGE_FALLBACK_PROPERTY = "filter.merge.fallback";
+
+    /** System property with the memory budget of the verified emails, in MB. */
+    static final String BUDGET_PROPERTY = "verified.budget.mb";
+
     /**
      * Main entry point that orchestrates the email verification and filtering process.
      * Reads verified emails from 'checked.csv', filters 'scraped.csv' based on those emails,
@@ -42,56 +102,133 @@ public class Main {
         String scrapedFile = desktopPath + "/scraped.csv";
         String outputFile = desktopPath + "/filtered_scraped.csv";
 
-        // Columns to remove from scraped CSV (based on actual column names)
-        Set<String> columnsToRemove = Set.of(
-            "Followers", "Following", "Tweets",
-            "Profile picture link", "Screen name", "Bio"
-        );
-
         try {
-            // Step 1: Read checked emails
-            Set<String> checkedEmails = readCheckedEmails(checkedFile);
-            System.out.println("Loaded " + checkedEmails.size() + " checked emails");
-
-            // Step 2: Process scraped file
-            filterScrapedFile(scrapedFile, outputFile, checkedEmails, columnsToRemove);
+            Path checkedPath = Paths.get(checkedFile);
+            Path scrapedPath = Paths.get(scrapedFile);
+            Path outputPath = Paths.get(outputFile);
+            try {
+                filter(checkedFile, scrapedFile, outputFile,
+                    JoinPlanner.plan(checkedPath, scrapedPath, outputPath, true));
+            } catch (SortMergeJoin.UnsortedInputException e) {
+                if (!Boolean.parseBoolean(System.getProperty(MERGE_FALLBACK_PROPERTY, "true"))) {
+                    throw e;
+                }
+                // The output is rewritten from scratch by the other join
+                System.out.println("Warning: " + e.getMessage() + ", falling back from the merge join");
+                filter(checkedFile, scrapedFile, outputFile,
+                    JoinPlanner.plan(checkedPath, scrapedPath, outputPath, false));
+            }
 
             System.out.println("Processing completed! Filtered file saved as: " + outputFile);
 
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
+            // The mapped tokenizer reports malformed UTF-8 unchecked, when a value is read
             System.err.println("Error processing files: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Runs one filter pass: loads the verified emails into memory unless the plan joins
+     * without them, then filters the scraped file.
+     *
+     * @param plan Join chosen by {@link JoinPlanner}
+     */
+    private static void filter(String checkedFile, String scrapedFile, String outputFile, JoinPlanner.Plan plan)
+            throws IOException {
+        // Step 1: Read checked emails (and collect Bloom filter keys if planned)
+        EmailLookup checkedEmails = null;
+        BlockedBloomFilter bloomFilter = null;
+        if (plan.join == null) {
+            BlockedBloomFilter.Builder bloomBuilder = plan.bloom ? new BlockedBloomFilter.Builder() : null;
+            checkedEmails = loadCheckedEmails(checkedFile, bloomBuilder);
+            System.out.println("Loaded " + checkedEmails.size() + " checked emails");
+            System.out.println("Verified set memory: " + checkedEmails.memoryReport());
+
+            if (bloomBuilder != null) {
+                double falsePositiveRate = Double.parseDouble(System.getProperty(BLOOM_FPP_PROPERTY, "0.01"));
+                bloomFilter = bloomBuilder.build(falsePositiveRate);
+                System.out.printf("Bloom filter: %.1f MB, %d hashes, target false-positive rate %.4f%n",
+                    bloomFilter.memoryBytes() / (1024.0 * 1024.0), bloomFilter.hashCount(), falsePositiveRate);
+            }
+        }
+
+        // Step 2: Process scraped file
+        filterScrapedFile(scrapedFile, outputFile, checkedEmails, bloomFilter, COLUMNS_TO_REMOVE, plan.join);
+    }
+
+    /**
+     * Loads the verified emails, either straight from the checked CSV file or, when
+     * 'verified.index' is enabled, from its persistent index. A missing or stale index is
+     * rebuilt from the CSV file first.
+     *
+     * @param checkedFile Path to the checked.csv file
+     * @param bloomBuilder Receives the fingerprint of every distinct email, or null
+     * @return Set of verified email addresses (normalized to lowercase)
+     * @throws IOException if file reading fails
+     */
+    private static EmailLookup loadCheckedEmails(String checkedFile, BlockedBloomFilter.Builder bloomBuilder)
+            throws IOException {
+        if (!Boolean.getBoolean(INDEX_PROPERTY)) {
+            return readCheckedEmails(checkedFile, EmailSet.create(0), bloomBuilder);
+        }
+
+        Path sourceFile = Paths.get(checkedFile);
+        Path indexFile = Paths.get(System.getProperty(INDEX_FILE_PROPERTY, checkedFile + ".idx"));
+
+        VerifiedEmailIndex index = VerifiedEmailIndex.open(indexFile, sourceFile);
+        if (index == null) {
+            System.out.println("Building verified email index: " + indexFile);
+            // Stamp first: an edit during the read must leave the index stale, not stamped as current
+            long[] stamp = VerifiedEmailIndex.sourceStamp(sourceFile);
+            EmailFingerprintSet emails = new EmailFingerprintSet(0, false);
+            readCheckedEmails(checkedFile, emails, null);
+            VerifiedEmailIndex.write(indexFile, sourceFile, stamp, emails);
+
+            // Opening compares the written stamp with a fresh one of checked.csv
+            index = VerifiedEmailIndex.open(indexFile, sourceFile);
+            if (index == null) {
+                // checked.csv changed while it was being indexed; use what was just read
+                System.out.println("Warning: " + checkedFile + " changed while indexing, index not used");
+                if (bloomBuilder != null) {
+                    for (long fingerprint : emails.table()) {
+                        if (fingerprint != 0) {
+                            bloomBuilder.add(fingerprint);
+                        }
+                    }
+                }
+                return emails;
+            }
+        } else {
+            System.out.println("Using verified email index: " + indexFile);
+        }
+
+        if (bloomBuilder != null) {
+            index.forEachFingerprint(bloomBuilder::add);
+        }
+        return index;
+    }
+
     /**
      * Reads verified email addresses from the checked CSV file.
      * Extracts emails from the second column (index 1) of the CSV file,
      * normalizes them to lowercase, and filters out invalid entries.
      *
      * @param filePath Path to the checked.csv file
-     * @return Set of verified email addresses (normalized to lowercase)
+     * @param emails Empty set to fill
+     * @param bloomBuilder Receives the fingerprint of every distinct email, or null
+     * @return The filled set of verified email addresses (normalized to lowercase)
      * @throws IOException if file reading fails
      */
-    private static Set<String> readCheckedEmails(String filePath) throws IOException {
-        Set<String> emails = new HashSet<>();
-
-        try (Reader reader = Files.newBufferedReader(Paths.get(filePath));
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT
-                     .withFirstRecordAsHeader()
-                     .withIgnoreEmptyLines(true)
-                     .withTrim(true)
-                     .withAllowMissingColumnNames(true))) {
-
-            for (CSVRecord record : csvParser) {
-                // Read email from second column (index 1)
-                if (record.size() > 1) {
-                    String email = record.get(1);
-                    if (email != null && !email.trim().isEmpty() &&
-                        !email.trim().equalsIgnoreCase("ok") &&
-                        !email.trim().equalsIgnoreCase("ELV Result")) {
-                        emails.add(email.trim().toLowerCase());
-                    }
+    static EmailSet readCheckedEmails(String filePath, EmailSet emails,
+                                      BlockedBloomFilter.Builder bloomBuilder) throws IOException {
+
+        try (CsvSource csvSource = CsvSource.open(Paths.get(filePath))) {
+
+            while (csvSource.nextRecord()) {
+                String email = checkedEmail(csvSource);
+                if (email != null && emails.add(email) && bloomBuilder != null) {
+                    bloomBuilder.add(EmailNormalizer.fingerprint(email));
                 }
             }
         }
@@ -99,6 +236,25 @@ public class Main {
         return emails;
     }
 
+    /**
+     * Extracts the verified email of the current checked.csv record.
+     *
+     * @param csvSource Source positioned on a record of checked.csv
+     * @return The raw email, or null if the record has none or is a status line
+     */
+    static String checkedEmail(CsvSource csvSource) {
+        // Read email from second column (index 1)
+        if (csvSource.size() > 1) {
+            String email = csvSource.get(1);
+            if (!EmailNormalizer.isBlank(email) &&
+                !EmailNormalizer.matches(email, "ok") &&
+                !EmailNormalizer.matches(email, "elv result")) {
+                return email;
+            }
+        }
+        return null;
+    }
+
     /**
      * Filters the scraped CSV file based on verified emails and removes unwanted columns.
      * Only includes records where the email field matches an email from the checked file.
@@ -106,23 +262,22 @@ public class Main {
      *
      * @param inputFile Path to the scraped.csv file
      * @param outputFile Path for the filtered output file
-     * @param checkedEmails Set of verified email addresses
+     * @param checkedEmails Set of verified email addresses, or null with a join
+     * @param bloomFilter Pre-check over the verified emails, or null to probe the set directly
      * @param columnsToRemove Set of column names to exclude from output
+     * @param join Join replacing the in-memory set, or null
      * @throws IOException if file processing fails
      */
-    private static void filterScrapedFile(String inputFile, String outputFile,
-                                        Set<String> checkedEmails, Set<String> columnsToRemove) throws IOException {
+    static void filterScrapedFile(String inputFile, String outputFile,
+                                  EmailLookup checkedEmails, BlockedBloomFilter bloomFilter,
+                                  Set<String> columnsToRemove, ScrapedJoin join) throws IOException {
 
-        try (Reader reader = Files.newBufferedReader(Paths.get(inputFile));
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT
-                     .withFirstRecordAsHeader()
-                     .withIgnoreEmptyLines(true)
-                     .withTrim(true)
-                     .withAllowMissingColumnNames(true));
-             Writer writer = Files.newBufferedWriter(Paths.get(outputFile))) {
+        try (CsvSource csvSource = CsvSource.open(Paths.get(inputFile));
+             FileChannel outputChannel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
 
             // Get headers and filter out unwanted columns
-            List<String> originalHeaders = csvParser.getHeaderNames();
+            List<String> originalHeaders = csvSource.getHeaderNames();
             List<String> filteredHeaders = new ArrayList<>();
 
             for (String header : originalHeaders) {
@@ -134,45 +289,181 @@ public class Main {
             // Find email column index for filtered headers
             String emailColumn = findEmailColumn(originalHeaders);
 
-            // Create CSV printer with filtered headers
-            CSVPrinter csvPrinter = new CSVPrinter(writer,
-                CSVFormat.DEFAULT.withHeader(filteredHeaders.toArray(new String[0])));
+            // Resolve names to column indexes once: output column i is read from projection[i].
+            // Name lookups resolve duplicate headers to their last occurrence, as before.
+            int emailIndex = csvSource.indexOf(emailColumn);
+            int[] projection = new int[filteredHeaders.size()];
+            for (int i = 0; i < projection.length; i++) {
+                projection[i] = csvSource.indexOf(filteredHeaders.get(i));
+            }
+
+            FilterCounts counts = new FilterCounts();
+            boolean split = Boolean.getBoolean(FILTER_SPLIT_PROPERTY);
+            int threads = Integer.getInteger(FILTER_THREADS_PROPERTY,
+                split ? Runtime.getRuntime().availableProcessors() : 1);
+            boolean passthrough = Boolean.getBoolean(FILTER_PASSTHROUGH_PROPERTY);
+            if (passthrough && !(csvSource instanceof MappedCsvSource && join == null && !split && threads <= 1)) {
+                System.out.println("Note: " + FILTER_PASSTHROUGH_PROPERTY + " needs csv.tokenizer=mapped, the hash or "
+                    + "bloom join and a single filter thread; formatting rows instead");
+                passthrough = false;
+            }
+
+            // Create CSV output with filtered headers
+            CsvOutput output = passthrough ? null : CsvOutput.open(outputChannel, filteredHeaders);
+
+            if (passthrough) {
+                // Header and verified rows are copied byte for byte, kept columns only
+                MappedCsvSource mappedSource = (MappedCsvSource) csvSource;
+                RawRecordWriter rawWriter = new RawRecordWriter(outputChannel, projection);
+                rawWriter.writeHeader(mappedSource.headerRecord());
+                filterRecords(csvSource, emailIndex, checkedEmails, bloomFilter, counts,
+                    () -> rawWriter.write(mappedSource));
+                rawWriter.flush();
+            } else if (join != null) {
+                join.filter(csvSource, output, emailIndex, projection, counts);
+                output.flush();
+            } else if (split || threads > 1) {
+                // Header is written, the remaining records are filtered block by block
+                ScrapedBlockFilter blockFilter = new ScrapedBlockFilter(emailIndex, projection,
+                    checkedEmails, bloomFilter);
+                boolean ordered = !Boolean.getBoolean(FILTER_UNORDERED_PROPERTY);
+                if (split) {
+                    new SplitScrapedFilter(threads, blockFilter, ordered).filter(Paths.get(inputFile), output, counts);
+                } else {
+                    new PipelinedScrapedFilter(threads, blockFilter, ordered).filter(Paths.get(inputFile), output, counts);
+                }
+                output.flush();
+            } else {
+                filterRecords(csvSource, output, emailIndex, projection, checkedEmails, bloomFilter, counts);
+                output.flush();
+            }
+
+            System.out.println("Total rows processed: " + counts.totalRows);
+            System.out.println("Rows with verified emails saved: " + counts.filteredRows);
+            if (bloomFilter != null) {
+                long negatives = counts.bloomRejects + counts.bloomFalsePositives;
+                System.out.printf("Bloom filter rejects: %d, false positives: %d (realized rate %.4f)%n",
+                    counts.bloomRejects, counts.bloomFalsePositives,
+                    negatives > 0 ? (double) counts.bloomFalsePositives / negatives : 0.0);
+            }
+            System.out.println("Removed columns: " + String.join(", ", columnsToRemove));
+        }
+    }
+
+    /**
+     * Filters the remaining records of a source and prints the verified ones, kept columns only.
+     *
+     * @param csvSource Source positioned before the first record to filter
+     * @param output Output receiving the kept columns of every verified record
+     * @param emailIndex Index of the email column
+     * @param projection Source column index of every output column
+     * @param checkedEmails Set of verified email addresses
+     * @param bloomFilter Pre-check over the verified emails, or null to probe the set directly
+     * @param counts Counters to add this run's rows to
+     * @throws IOException if reading or printing fails
+     */
+    static void filterRecords(CsvSource csvSource, CsvOutput output, int emailIndex, int[] projection,
+                              EmailLookup checkedEmails, BlockedBloomFilter bloomFilter,
+                              FilterCounts counts) throws IOException {
+        filterRecords(csvSource, emailIndex, checkedEmails, bloomFilter, counts, () -> {
+            // Save the line to result CSV, kept columns only. Removed columns are
+            // never read, so the mapped tokenizer never decodes or unescapes them.
+            for (int column : projection) {
+                output.print(csvSource, column);
+            }
+            output.println();
+        });
+    }
 
-            int totalRows = 0;
-            int filteredRows = 0;
+    /**
+     * Filters the remaining records of a source and hands the verified ones to a sink.
+     *
+     * @param csvSource Source positioned before the first record to filter
+     * @param emailIndex Index of the email column
+     * @param checkedEmails Set of verified email addresses
+     * @param bloomFilter Pre-check over the verified emails, or null to probe the set directly
+     * @param counts Counters to add this run's rows to
+     * @param sink Writes the current record of the source, called for every verified record
+     * @throws IOException if reading or writing fails
+     */
+    static void filterRecords(CsvSource csvSource, int emailIndex, EmailLookup checkedEmails,
+                              BlockedBloomFilter bloomFilter, FilterCounts counts,
+                              RecordSink sink) throws IOException {
+        MappedCsvSource mappedSource = csvSource instanceof MappedCsvSource ? (MappedCsvSource) csvSource : null;
 
-            // Read scraped file line by line
-            for (CSVRecord record : csvParser) {
-                totalRows++;
+        // Read scraped file line by line
+        while (csvSource.nextRecord()) {
+            counts.totalRows++;
 
+            boolean verified;
+            if (mappedSource != null && mappedSource.isSlice(emailIndex)) {
+                // Match the UTF-8 bytes of the mapped input in place; only non-ASCII
+                // addresses are ever decoded into a String
+                ByteBuffer buffer = mappedSource.buffer();
+                int offset = mappedSource.fieldOffset(emailIndex);
+                int length = mappedSource.fieldLength(emailIndex);
+                if (EmailNormalizer.isBlank(buffer, offset, length)) {
+                    continue;
+                }
+                if (bloomFilter != null
+                    && !bloomFilter.mightContain(EmailNormalizer.fingerprint(buffer, offset, length))) {
+                    counts.bloomRejects++;
+                    continue;
+                }
+                verified = checkedEmails.contains(buffer, offset, length);
+            } else {
                 // Get email from current line
-                String email = record.get(emailColumn);
+                String email = csvSource.get(emailIndex);
 
                 // Check if email is present and not empty
-                if (email != null && !email.trim().isEmpty()) {
-                    String normalizedEmail = email.trim().toLowerCase();
-
-                    // Only save line if email is present in checked file
-                    if (checkedEmails.contains(normalizedEmail)) {
-                        // Create filtered record (omit unwanted columns)
-                        List<String> filteredRecord = new ArrayList<>();
-                        for (String header : filteredHeaders) {
-                            String value = record.get(header);
-                            filteredRecord.add(value != null ? value : "");
-                        }
-
-                        // Save the line to result CSV
-                        csvPrinter.printRecord(filteredRecord);
-                        filteredRows++;
-                    }
+                if (EmailNormalizer.isBlank(email)) {
+                    continue;
                 }
+                // Most emails are not verified: let the Bloom filter reject them cheaply
+                if (bloomFilter != null && !bloomFilter.mightContain(EmailNormalizer.fingerprint(email))) {
+                    counts.bloomRejects++;
+                    continue;
+                }
+                // The set normalizes the raw value itself, without allocating for ASCII
+                verified = checkedEmails.contains(email);
             }
 
-            csvPrinter.flush();
+            // Only save line if email is present in checked file
+            if (verified) {
+                sink.write();
+                counts.filteredRows++;
+            } else if (bloomFilter != null) {
+                counts.bloomFalsePositives++;
+            }
+        }
+    }
 
-            System.out.println("Total rows processed: " + totalRows);
-            System.out.println("Rows with verified emails saved: " + filteredRows);
-            System.out.println("Removed columns: " + String.join(", ", columnsToRemove));
+    /**
+     * Receives the verified records of {@link #filterRecords}.
+     */
+    interface RecordSink {
+        /**
+         * Writes the record the source is positioned on.
+         *
+         * @throws IOException if writing fails
+         */
+        void write() throws IOException;
+    }
+
+    /**
+     * Row counters of one filter run, or of one block of it.
+     */
+    static final class FilterCounts {
+        long totalRows;
+        long filteredRows;
+        long bloomRejects;
+        long bloomFalsePositives;
+
+        void add(FilterCounts other) {
+            totalRows += other.totalRows;
+            filteredRows += other.filteredRows;
+            bloomRejects += other.bloomRejects;
+            bloomFalsePositives += other.bloomFalsePositives;
         }
     }
 
@@ -184,7 +475,7 @@ public class Main {
      * @return Name of the email column
      * @throws RuntimeException if no email column is found
      */
-    private static String findEmailColumn(List<String> headers) {
+    static String findEmailColumn(List<String> headers) {
         // Try to find email column by common names
         String[] emailColumnNames = {"email", "Email", "EMAIL", "e-mail", "E-mail", "mail", "Mail"};
 
@@ -1,21 +1,22 @@
 package org.example;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
-
 import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Main2 class for combining and processing multiple prospect CSV files with email deduplication.
@@ -28,9 +29,42 @@ import java.util.Set;
  * - Maintains the same column structure across all input files
  *
  * Output: 'combined_prospects.csv' containing all unique prospect records with valid emails.
+ *
+ * Set the system property 'combine.threads' to a value above 1 to parse the prospect files
+ * concurrently on that many worker threads (see {@link ParallelProspectsCombiner}), and
+ * 'combine.dedup.set' to pick the {@link EmailSet} used for deduplication ('concurrent' lets
+ * the parser threads deduplicate, see {@link ConcurrentFingerprintSet}; 'combine.dedup.shards'
+ * hands it to shard threads instead, see {@link ShardedDeduplicator}). With
+ * 'combine.schema=union' the output carries the columns of every file instead of only those of
+ * the first one. 'combine.virtual=true' parses every file on its own virtual thread (Java 21+),
+ * with 'combine.threads' capping the files in flight. 'combine.dedup.budget.mb' caps the memory
+ * of the deduplication set; past it, new emails are deduplicated on disk (see
+ * {@link SpillingDeduplicator}). The output is written through {@link CsvOutput}
+ * ('csv.writer').
  */
 public class Main2 {
 
+    /** System property selecting the number of parser threads; 1 keeps the sequential combine. */
+    static final String THREADS_PROPERTY = "combine.threads";
+
+    /** System property selecting the {@link EmailSet} kind used to track unique emails. */
+    static final String DEDUP_SET_PROPERTY = "combine.dedup.set";
+
+    /** System property selecting the master headers: 'first' file's headers or 'union' of all files. */
+    static final String SCHEMA_PROPERTY = "combine.schema";
+
+    /** System property running every prospect file on its own virtual thread (Java 21+). */
+    static final String VIRTUAL_PROPERTY = "combine.virtual";
+
+    /** Files in flight with virtual threads unless 'combine.threads' sets another cap. */
+    static final int DEFAULT_VIRTUAL_FILES = 32;
+
+    /** System property selecting the number of dedup shard threads of the parallel combine; 0 for none. */
+    static final String DEDUP_SHARDS_PROPERTY = "combine.dedup.shards";
+
+    /** System property capping the deduplication set's memory, in MB; 0 keeps every email in memory. */
+    static final String DEDUP_BUDGET_PROPERTY = "combine.dedup.budget.mb";
+
     /**
      * Main entry point for combining prospect CSV files with email processing and deduplication.
      * Processes all CSV files in the prospects folder and creates a unified, deduplicated output.
@@ -55,24 +89,60 @@ public class Main2 {
      *
      * Features:
      * - Reads all .csv files from the specified folder
-     * - Uses first file's headers as the master column structure
+     * - Uses first file's headers as the master column structure, or with 'combine.schema=union'
+     *   the union of all files' headers (files are then processed in file name order)
      * - Processes email fields with intelligent fallback (email -> personal_email)
      * - Removes duplicate email addresses (case-insensitive comparison)
      * - Skips records with no valid email address
      * - Provides detailed processing statistics
+     * - Parses files concurrently when 'combine.threads' is above 1, or each on its own
+     *   virtual thread with 'combine.virtual=true'
+     * - Deduplicates on disk once the unique emails outgrow 'combine.dedup.budget.mb'
      *
      * @param prospectsFolder Path to the folder containing prospect CSV files
      * @param outputFile Path for the combined output CSV file
      * @throws IOException if file processing fails
      */
-    private static void combineProspectsCsvFiles(String prospectsFolder, String outputFile) throws IOException {
+    static void combineProspectsCsvFiles(String prospectsFolder, String outputFile) throws IOException {
         Path prospectsPath = Paths.get(prospectsFolder);
 
         if (!Files.exists(prospectsPath) || !Files.isDirectory(prospectsPath)) {
             throw new IOException("Prospects folder does not exist: " + prospectsFolder);
         }
 
-        List<String> headers = null;
+        // Collect the files in directory order, which decides the first-seen-wins winner
+        List<Path> csvFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(prospectsPath, "*.csv")) {
+            for (Path csvFile : stream) {
+                csvFiles.add(csvFile);
+            }
+        }
+
+        // In union mode the master headers cover every file, in a deterministic file order
+        boolean virtualThreads = Boolean.getBoolean(VIRTUAL_PROPERTY);
+        int threads = Integer.getInteger(THREADS_PROPERTY, virtualThreads ? DEFAULT_VIRTUAL_FILES : 1);
+        List<String> masterHeaders = null;
+        String schema = System.getProperty(SCHEMA_PROPERTY, "first");
+        if (schema.equals("union")) {
+            csvFiles.sort(Comparator.comparing(path -> path.getFileName().toString()));
+            masterHeaders = unionHeaders(csvFiles);
+            if (masterHeaders != null) {
+                System.out.println("Union headers: " + String.join(", ", masterHeaders));
+            }
+        } else if (!schema.equals("first")) {
+            throw new IllegalArgumentException("Unknown " + SCHEMA_PROPERTY + ": " + schema);
+        }
+
+        if (threads > 1 || virtualThreads) {
+            try (FileChannel outputChannel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                new ParallelProspectsCombiner(csvFiles, threads, masterHeaders, virtualThreads)
+                    .combine(outputChannel, outputFile);
+            }
+            return;
+        }
+
+        List<String> headers = masterHeaders;
         boolean isFirstFile = true;
         int totalRecords = 0;
         int processedFiles = 0;
@@ -80,146 +150,204 @@ public class Main2 {
         int duplicateRecords = 0;
 
         // Track unique emails to avoid duplicates
-        Set<String> uniqueEmails = new HashSet<>();
-
-        try (Writer writer = Files.newBufferedWriter(Paths.get(outputFile))) {
-            CSVPrinter csvPrinter = null;
+        try (SpillingDeduplicator uniqueEmails = createDeduplicator(outputFile);
+             FileChannel outputChannel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CsvOutput output = null;
 
             // Read all CSV files from the prospects folder
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(prospectsPath, "*.csv")) {
-                for (Path csvFile : stream) {
-                    System.out.println("Processing file: " + csvFile.getFileName());
-
-                    try (Reader reader = Files.newBufferedReader(csvFile);
-                         CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT
-                                 .withFirstRecordAsHeader()
-                                 .withIgnoreEmptyLines(true)
-                                 .withTrim(true)
-                                 .withAllowMissingColumnNames(true))) {
-
-                        if (isFirstFile) {
-                            // Get headers from the first file and create CSV printer
-                            headers = new ArrayList<>(csvParser.getHeaderNames());
-                            csvPrinter = new CSVPrinter(writer,
-                                CSVFormat.DEFAULT.withHeader(headers.toArray(new String[0])));
-                            isFirstFile = false;
-                            System.out.println("Headers found: " + String.join(", ", headers));
-                        } else {
-                            // Validate that current file has the same headers
-                            List<String> currentHeaders = new ArrayList<>(csvParser.getHeaderNames());
-                            if (!headers.equals(currentHeaders)) {
-                                System.out.println("Warning: File " + csvFile.getFileName() +
-                                    " has different headers. Expected: " + headers +
-                                    ", Found: " + currentHeaders);
-                                // Continue processing but log the warning
-                            }
+            for (int fileIndex = 0; fileIndex < csvFiles.size(); fileIndex++) {
+                Path csvFile = csvFiles.get(fileIndex);
+                System.out.println("Processing file: " + csvFile.getFileName());
+
+                try (CsvSource csvSource = CsvSource.open(csvFile)) {
+
+                    if (isFirstFile) {
+                        // Get headers from the first file (unless given) and create CSV output
+                        if (headers == null) {
+                            headers = new ArrayList<>(csvSource.getHeaderNames());
                         }
+                        output = CsvOutput.open(outputChannel, headers);
+                        isFirstFile = false;
+                        System.out.println("Headers found: " + String.join(", ", headers));
+                    }
 
-                        // Copy records from current file with email processing and deduplication
-                        int fileRecords = 0;
-                        int fileSkipped = 0;
-                        int fileDuplicates = 0;
-                        for (CSVRecord record : csvParser) {
-                            List<String> recordValues = new ArrayList<>();
-
-                            // Check email and personal_email values
-                            String emailValue = "";
-                            String personalEmailValue = "";
-
-                            try {
-                                emailValue = record.get("email");
-                                if (emailValue == null) emailValue = "";
-                            } catch (IllegalArgumentException e) {
-                                emailValue = "";
-                            }
-
-                            try {
-                                personalEmailValue = record.get("personal_email");
-                                if (personalEmailValue == null) personalEmailValue = "";
-                            } catch (IllegalArgumentException e) {
-                                personalEmailValue = "";
-                            }
-
-                            // Skip if both email and personal_email are empty
-                            if (emailValue.trim().isEmpty() && personalEmailValue.trim().isEmpty()) {
-                                fileSkipped++;
-                                skippedRecords++;
-                                continue;
-                            }
-
-                            // Use personal_email if email is empty but personal_email is not
-                            String finalEmailValue = emailValue.trim().isEmpty() ? personalEmailValue : emailValue;
-
-                            // Check for duplicate email and skip if already processed
-                            String normalizedEmail = finalEmailValue.trim().toLowerCase();
-                            if (uniqueEmails.contains(normalizedEmail)) {
-                                fileDuplicates++;
-                                duplicateRecords++;
-                                continue;
-                            }
-
-                            // Add email to unique set
-                            uniqueEmails.add(normalizedEmail);
-
-                            // Extract values for each header column
-                            for (int i = 0; i < headers.size(); i++) {
-                                String header = headers.get(i);
-                                String value = "";
-
-                                if (header.equalsIgnoreCase("email")) {
-                                    // Use the processed email value
-                                    value = finalEmailValue;
-                                } else {
-                                    try {
-                                        value = record.get(header);
-                                        if (value == null) {
-                                            value = "";
-                                        }
-                                    } catch (IllegalArgumentException e) {
-                                        // Column doesn't exist in this file, use empty string
-                                        value = "";
-                                    }
-                                }
-                                recordValues.add(value);
-                            }
-
-                            csvPrinter.printRecord(recordValues);
-                            fileRecords++;
-                            totalRecords++;
+                    // Resolve the master headers to this file's columns once
+                    ProspectColumnMapping mapping = ProspectColumnMapping.map(headers, csvSource);
+                    List<String> currentHeaders = csvSource.getHeaderNames();
+                    if (mapping.differs(masterHeaders != null)) {
+                        System.out.println("Warning: File " + csvFile.getFileName() +
+                            " has different headers. Expected: " + headers +
+                            ", Found: " + currentHeaders);
+                        System.out.println("  - " + mapping.describe());
+                        // Continue processing but log the warning
+                    }
+
+                    // Copy records from current file with email processing and deduplication
+                    int fileRecords = 0;
+                    int fileSkipped = 0;
+                    int fileDuplicates = 0;
+                    int fileDeferred = 0;
+                    while (csvSource.nextRecord()) {
+                        // Use personal_email if email is empty, skip the record if both are
+                        int emailColumn = mapping.emailSource(csvSource);
+                        if (emailColumn == ProspectColumnMapping.MISSING) {
+                            fileSkipped++;
+                            skippedRecords++;
+                            continue;
                         }
 
-                        System.out.println("  - Records from " + csvFile.getFileName() + ": " + fileRecords);
-                        if (fileSkipped > 0) {
-                            System.out.println("  - Skipped records (no email): " + fileSkipped);
+                        // Add email to unique set, skip it if it was already processed. The
+                        // mapped tokenizer's bytes are matched as they are, so only kept rows
+                        // decode their email.
+                        int status = uniqueEmails.add(csvSource, emailColumn, fileIndex);
+                        if (status == SpillingDeduplicator.DUPLICATE) {
+                            fileDuplicates++;
+                            duplicateRecords++;
+                            continue;
                         }
-                        if (fileDuplicates > 0) {
-                            System.out.println("  - Duplicate emails skipped: " + fileDuplicates);
+
+                        // Extract values for each header column (processed email for 'email')
+                        String finalEmailValue = csvSource.get(emailColumn);
+                        String[] recordValues = mapping.values(csvSource, finalEmailValue);
+                        if (status == SpillingDeduplicator.DEFERRED) {
+                            uniqueEmails.defer(recordValues);
+                            fileDeferred++;
+                        } else {
+                            output.printRecord(recordValues);
                         }
-                        processedFiles++;
+                        fileRecords++;
+                        totalRecords++;
+                    }
 
-                    } catch (IOException e) {
-                        System.err.println("Error reading file " + csvFile.getFileName() + ": " + e.getMessage());
-                        // Continue with other files
+                    System.out.println("  - Records from " + csvFile.getFileName() + ": " + fileRecords);
+                    if (fileSkipped > 0) {
+                        System.out.println("  - Skipped records (no email): " + fileSkipped);
+                    }
+                    if (fileDuplicates > 0) {
+                        System.out.println("  - Duplicate emails skipped: " + fileDuplicates);
+                    }
+                    if (fileDeferred > 0) {
+                        System.out.println("  - Records pending on-disk duplicate check: " + fileDeferred);
                     }
+                    processedFiles++;
+
+                } catch (IOException | UncheckedIOException e) {
+                    // The mapped tokenizer reports malformed UTF-8 unchecked, when a value is read
+                    System.err.println("Error reading file " + csvFile.getFileName() + ": " + e.getMessage());
+                    // Continue with other files
                 }
             }
 
-            if (csvPrinter != null) {
-                csvPrinter.flush();
+            if (output != null) {
+                int spilledDuplicates = resolveDeferred(uniqueEmails, output, csvFiles);
+                totalRecords -= spilledDuplicates;
+                duplicateRecords += spilledDuplicates;
+                output.flush();
+            }
+
+            printSummary(processedFiles, totalRecords, skippedRecords, duplicateRecords,
+                uniqueEmails.uniqueEmails(), outputFile);
+        }
+    }
+
+    /**
+     * Builds the union of the headers of all files: each column appears once, in the order in
+     * which it first occurs when the files are visited in the given order. Only the header
+     * record of each file is read, and the files are read in parallel.
+     *
+     * @param csvFiles Files in processing order
+     * @return Union of the header names, or null if no file has a readable header
+     * @throws IOException if interrupted while waiting for the headers
+     */
+    static List<String> unionHeaders(List<Path> csvFiles) throws IOException {
+        int threads = Math.max(1, Math.min(csvFiles.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "prospects-header");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<List<String>>> fileHeaders = new ArrayList<>();
+            for (Path csvFile : csvFiles) {
+                fileHeaders.add(pool.submit(() -> CsvHeaderReader.read(csvFile)));
+            }
+
+            Set<String> union = null;
+            for (Future<List<String>> headers : fileHeaders) {
+                try {
+                    List<String> names = headers.get();
+                    if (union == null) {
+                        union = new LinkedHashSet<>();
+                    }
+                    union.addAll(names);
+                } catch (ExecutionException e) {
+                    // Unreadable file, reported when its records are read
+                }
             }
+            return union != null ? new ArrayList<>(union) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading prospect headers", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            System.out.println("\n=== Summary ===");
-            System.out.println("Files processed: " + processedFiles);
-            System.out.println("Total records combined: " + totalRecords);
-            System.out.println("Total records skipped (no email): " + skippedRecords);
-            System.out.println("Total duplicate emails skipped: " + duplicateRecords);
-            System.out.println("Unique emails in output: " + uniqueEmails.size());
-            System.out.println("Output file: " + outputFile);
+    /**
+     * Creates the deduplicator tracking unique emails, with a set of the kind selected by
+     * 'combine.dedup.set' and the memory budget of 'combine.dedup.budget.mb'. Spill files go
+     * next to the output file.
+     */
+    static SpillingDeduplicator createDeduplicator(String outputFile) {
+        long budgetBytes = Long.getLong(DEDUP_BUDGET_PROPERTY, 0) << 20;
+        Path spillParent = Paths.get(outputFile).toAbsolutePath().getParent();
+        return new SpillingDeduplicator(System.getProperty(DEDUP_SET_PROPERTY, "hashset"), budgetBytes,
+            spillParent);
+    }
 
-            if (processedFiles == 0) {
-                System.out.println("No CSV files found in the prospects folder!");
+    /**
+     * Writes the deferred rows that survive the on-disk deduplication and reports the
+     * duplicates it found, per file.
+     *
+     * @return Number of deferred rows dropped as duplicates
+     * @throws IOException if the spill files cannot be read or the output cannot be written
+     */
+    static int resolveDeferred(SpillingDeduplicator uniqueEmails, CsvOutput output, List<Path> csvFiles)
+            throws IOException {
+        if (!uniqueEmails.spilling()) {
+            return 0;
+        }
+        System.out.println("Resolving duplicates of the deferred records...");
+        int[] duplicates = uniqueEmails.finish(output, csvFiles.size());
+        int total = 0;
+        for (int i = 0; i < duplicates.length; i++) {
+            if (duplicates[i] > 0) {
+                System.out.println("  - Duplicate emails skipped from " + csvFiles.get(i).getFileName() + ": "
+                    + duplicates[i]);
+                total += duplicates[i];
             }
         }
+        return total;
+    }
+
+    /**
+     * Prints the end-of-run statistics shared by all combine modes.
+     */
+    static void printSummary(int processedFiles, int totalRecords, int skippedRecords,
+                             int duplicateRecords, int uniqueEmails, String outputFile) {
+        System.out.println("\n=== Summary ===");
+        System.out.println("Files processed: " + processedFiles);
+        System.out.println("Total records combined: " + totalRecords);
+        System.out.println("Total records skipped (no email): " + skippedRecords);
+        System.out.println("Total duplicate emails skipped: " + duplicateRecords);
+        System.out.println("Unique emails in output: " + uniqueEmails);
+        System.out.println("Output file: " + outputFile);
+
+        if (processedFiles == 0) {
+            System.out.println("No CSV files found in the prospects folder!");
+        }
     }
 
     /**
@@ -0,0 +1,431 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zero-copy {@link CsvSource} that tokenizes UTF-8 bytes straight out of a memory-mapped file.
+ *
+ * Instead of decoding the whole file into chars and allocating a String per value, each record
+ * is scanned in place and its values are kept as (offset, length) slices of {@link #buffer()}.
+ * A String is only materialized when {@link #get(int)} is called, so columns that are never
+ * read cost nothing beyond the scan.
+ *
+ * The file is mapped in windows of {@link #WINDOW_SIZE} bytes. When a record crosses the end of
+ * a window the next window is mapped starting at that record, so files of any size work and
+ * a record only has to fit into one window (windows grow for oversized records).
+ *
+ * Besides the values, every record keeps the raw bounds of its fields (quotes and surrounding
+ * whitespace included) and its end after the line break, so {@link RawRecordWriter} can copy
+ * records to the output byte for byte.
+ *
+ * The ends of values are found by a {@link CsvScanner}, which uses SIMD instructions through
+ * the Vector API when the JVM runs with '--add-modules jdk.incubator.vector'.
+ *
+ * Parsing follows the RFC 4180 dialect of CSVFormat.DEFAULT with the options the tools use:
+ * quoted values may contain delimiters, doubled quotes and line breaks, values are trimmed,
+ * empty lines are skipped and the first record is the header.
+ *
+ * Values are decoded strictly like the reader of {@link CommonsCsvSource}: {@link #get(int)}
+ * throws an UncheckedIOException with a MalformedInputException cause for malformed UTF-8,
+ * since a value is only decoded when it is read.
+ */
+final class MappedCsvSource implements CsvSource {
+
+    static final int WINDOW_SIZE = 256 << 20;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final List<String> headerNames;
+    private final Map<String, Integer> headerMap = new HashMap<>();
+    private final CsvScanner scanner = CsvScanner.create();
+
+    private ByteBuffer buffer;
+    private long windowStart;
+    private int windowSize;
+    private int position;
+
+    private int fieldCount;
+    private int[] fieldOffsets = new int[32];
+    private int[] fieldLengths = new int[32];
+    private boolean[] fieldEscaped = new boolean[32];
+    private int[] rawStarts = new int[32];
+    private int[] rawEnds = new int[32];
+    private int recordEnd;
+    private ByteBuffer headerRecord;
+    private byte[] scratch = new byte[256];
+
+    MappedCsvSource(Path path) throws IOException {
+        this(path, WINDOW_SIZE);
+    }
+
+    /**
+     * @param path CSV file to read
+     * @param windowSize Bytes mapped at a time; small windows make tests cross window edges
+     */
+    MappedCsvSource(Path path, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            map(0);
+
+            if (nextRecord()) {
+                byte[] header = new byte[recordEnd - rawStarts[0]];
+                buffer.get(rawStarts[0], header);
+                this.headerRecord = ByteBuffer.wrap(header);
+                List<String> names = new ArrayList<>(fieldCount);
+                for (int i = 0; i < fieldCount; i++) {
+                    String name = get(i);
+                    names.add(name);
+                    headerMap.put(name, i);
+                }
+                this.headerNames = Collections.unmodifiableList(names);
+            } else {
+                this.headerNames = Collections.emptyList();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tokenizes a block of complete records that is already in memory, e.g. a slice of a
+     * larger file cut at record boundaries. The block has no header: every record in it is
+     * a data record.
+     *
+     * @param block Block content, from position 0 to its limit
+     * @param fileOffset Position of the block in its file, used in error messages
+     */
+    MappedCsvSource(ByteBuffer block, long fileOffset) {
+        this.channel = null;
+        this.fileSize = fileOffset + block.limit();
+        this.headerNames = Collections.emptyList();
+        this.buffer = block;
+        this.windowStart = fileOffset;
+    }
+
+    @Override
+    public List<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    @Override
+    public int indexOf(String header) {
+        Integer index = headerMap.get(header);
+        return index != null ? index : -1;
+    }
+
+    @Override
+    public boolean nextRecord() throws IOException {
+        while (true) {
+            int result = parseRecord();
+            if (result != NEED_MORE) {
+                return result == RECORD;
+            }
+
+            // The record runs past the end of this window: remap starting at the record
+            long recordStart = windowStart + position;
+            if (recordStart == windowStart) {
+                if (windowSize == MAX_WINDOW_SIZE) {
+                    throw new IOException("CSV record at byte " + recordStart + " is larger than "
+                        + MAX_WINDOW_SIZE + " bytes");
+                }
+                windowSize = (int) Math.min((long) windowSize * 2, MAX_WINDOW_SIZE);
+            }
+            map(recordStart);
+        }
+    }
+
+    @Override
+    public int size() {
+        return fieldCount;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index >= fieldCount) {
+            return "";
+        }
+        int length = fieldLengths[index];
+        if (length == 0) {
+            return "";
+        }
+
+        byte[] bytes = scratch(length);
+        int offset = fieldOffsets[index];
+        int written;
+        if (!fieldEscaped[index]) {
+            buffer.get(offset, bytes, 0, length);
+            written = length;
+        } else {
+            // Collapse doubled quotes while copying
+            written = 0;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                byte b = buffer.get(i);
+                bytes[written++] = b;
+                if (b == QUOTE) {
+                    i++;
+                }
+            }
+        }
+        try {
+            return EmailNormalizer.decode(bytes, 0, written);
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Malformed UTF-8 in the value at byte " + (windowStart + offset), e);
+        }
+    }
+
+    /**
+     * @return Mapped window the value slices of the current record point into
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * @param index Column index, must be below {@link #size()}
+     * @return Offset of the trimmed value in {@link #buffer()}, without surrounding quotes
+     */
+    int fieldOffset(int index) {
+        return fieldOffsets[index];
+    }
+
+    /**
+     * @param index Column index, must be below {@link #size()}
+     * @return Length in bytes of the trimmed value slice
+     */
+    int fieldLength(int index) {
+        return fieldLengths[index];
+    }
+
+    /**
+     * @param index Column index, must be below {@link #size()}
+     * @return true if the slice contains doubled quotes that {@link #get(int)} collapses
+     */
+    boolean fieldEscaped(int index) {
+        return fieldEscaped[index];
+    }
+
+    /**
+     * @param index Column index
+     * @return true if the value is exactly the slice at {@link #fieldOffset} in
+     *         {@link #buffer()}: the column exists and holds no doubled quotes
+     */
+    boolean isSlice(int index) {
+        return index < fieldCount && !fieldEscaped[index];
+    }
+
+    /**
+     * @param index Column index, must be below {@link #size()}
+     * @return Offset in {@link #buffer()} where the field starts as written, quotes included
+     */
+    int rawStart(int index) {
+        return rawStarts[index];
+    }
+
+    /**
+     * @param index Column index, must be below {@link #size()}
+     * @return Offset in {@link #buffer()} of the delimiter or line break after the field
+     */
+    int rawEnd(int index) {
+        return rawEnds[index];
+    }
+
+    /**
+     * @return Offset in {@link #buffer()} just after the line break of the current record
+     */
+    int recordEnd() {
+        return recordEnd;
+    }
+
+    /**
+     * @return Raw bytes of the header record with its line break, or null if the file is empty
+     *         or the source is a block
+     */
+    ByteBuffer headerRecord() {
+        return headerRecord != null ? headerRecord.duplicate() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private static final int RECORD = 0;
+    private static final int END_OF_FILE = 1;
+    private static final int NEED_MORE = 2;
+
+    /**
+     * Scans one record starting at {@link #position}. On NEED_MORE nothing is consumed,
+     * so the caller can remap and call again.
+     */
+    private int parseRecord() throws IOException {
+        ByteBuffer buf = buffer;
+        int limit = buf.limit();
+        boolean lastWindow = windowStart + limit == fileSize;
+        int p = position;
+
+        // Skip empty lines
+        while (p < limit && (buf.get(p) == LF || buf.get(p) == CR)) {
+            p++;
+        }
+        if (p >= limit) {
+            if (lastWindow) {
+                position = p;
+                fieldCount = 0;
+                return END_OF_FILE;
+            }
+            position = p;
+            return NEED_MORE;
+        }
+
+        int count = 0;
+        while (true) {
+            int start = p;
+            int valueStart;
+            int valueEnd;
+            boolean escaped = false;
+
+            if (buf.get(p) == QUOTE) {
+                // Encapsulated value: runs to the next quote that is not doubled
+                p++;
+                valueStart = p;
+                int closing = scanner.closingQuote(buf, p, limit);
+                escaped = (closing & CsvScanner.ESCAPED) != 0;
+                p = closing & ~CsvScanner.ESCAPED;
+                if (p >= limit) {
+                    if (lastWindow) {
+                        throw new IOException("EOF reached before encapsulated token finished (starting at byte "
+                            + (windowStart + start) + ")");
+                    }
+                    return NEED_MORE;
+                }
+                if (p + 1 >= limit && !lastWindow) {
+                    // The quote might be the first of a doubled pair
+                    return NEED_MORE;
+                }
+                valueEnd = p;
+                p++;
+
+                // Only whitespace may sit between the closing quote and the delimiter
+                while (p < limit) {
+                    byte b = buf.get(p);
+                    if (b == DELIMITER || b == LF || b == CR) {
+                        break;
+                    }
+                    if (!Character.isWhitespace((char) (b & 0xFF))) {
+                        throw new IOException("Invalid char between encapsulated token and delimiter at byte "
+                            + (windowStart + p));
+                    }
+                    p++;
+                }
+            } else {
+                valueStart = p;
+                p = scanner.delimiterOrLineBreak(buf, p, limit);
+                valueEnd = p;
+            }
+
+            if (p >= limit && !lastWindow) {
+                return NEED_MORE;
+            }
+
+            // Trim like String.trim(): bytes up to 0x20 are never part of a multi-byte sequence
+            while (valueStart < valueEnd && (buf.get(valueStart) & 0xFF) <= ' ') {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && (buf.get(valueEnd - 1) & 0xFF) <= ' ') {
+                valueEnd--;
+            }
+            addField(count++, valueStart, valueEnd - valueStart, escaped);
+            rawStarts[count - 1] = start;
+            rawEnds[count - 1] = p;
+
+            if (p >= limit) {
+                break;
+            }
+            byte b = buf.get(p);
+            if (b == DELIMITER) {
+                p++;
+                if (p >= limit) {
+                    if (!lastWindow) {
+                        return NEED_MORE;
+                    }
+                    // A trailing delimiter at end of file still opens an empty last value
+                    addField(count++, p, 0, false);
+                    rawStarts[count - 1] = p;
+                    rawEnds[count - 1] = p;
+                    break;
+                }
+                continue;
+            }
+
+            // Line break ends the record, CRLF counts as one
+            p++;
+            if (b == CR) {
+                if (p >= limit && !lastWindow) {
+                    return NEED_MORE;
+                }
+                if (p < limit && buf.get(p) == LF) {
+                    p++;
+                }
+            }
+            break;
+        }
+
+        fieldCount = count;
+        position = p;
+        recordEnd = p;
+        return RECORD;
+    }
+
+    private void addField(int index, int offset, int length, boolean escaped) {
+        if (index == fieldOffsets.length) {
+            int capacity = index * 2;
+            fieldOffsets = Arrays.copyOf(fieldOffsets, capacity);
+            fieldLengths = Arrays.copyOf(fieldLengths, capacity);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, capacity);
+            rawStarts = Arrays.copyOf(rawStarts, capacity);
+            rawEnds = Arrays.copyOf(rawEnds, capacity);
+        }
+        fieldOffsets[index] = offset;
+        fieldLengths[index] = length;
+        fieldEscaped[index] = escaped;
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(windowSize, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+}
@@ -0,0 +1,449 @@
+package org.example;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel variant of {@link Main2#combineProspectsCsvFiles}.
+ *
+ * Prospect files are parsed concurrently on a bounded worker pool while the calling thread
+ * acts as the single writer:
+ * - Each worker parses one file, applies the email / personal_email fallback and projects
+ *   the record onto the master headers
+ * - Parsed rows are handed to the writer in batches through a {@link ReorderBuffer}, with
+ *   the file index as group
+ * - The writer takes the batches strictly in directory order, so deduplication against
+ *   uniqueEmails keeps the same first-seen-wins result as the sequential combine
+ * - With 'combine.dedup.set=concurrent' (and no dedup budget) the workers deduplicate
+ *   instead: each row is claimed in a shared {@link ConcurrentFingerprintSet} with its
+ *   (file, row) position, and the writer only checks whether it got the smallest one
+ * - With 'combine.dedup.shards' the rows are routed to shard threads that own a slice of
+ *   the emails each (see {@link ShardedDeduplicator}), and the writer waits for their verdict
+ * - Per-file and summary counters are printed exactly as the sequential combine prints them
+ *
+ * At most {@code threads} files are in flight at once, and together they can buffer at most
+ * {@link #QUEUE_CAPACITY} batches per thread, so memory stays bounded regardless of folder
+ * size.
+ *
+ * With virtual threads (Java 21+, 'combine.virtual') every file is parsed on its own virtual
+ * thread, which suits folders where parsing mostly waits for slow (network) storage. A
+ * launcher starts the files in directory order and a semaphore caps the files in flight at
+ * {@code threads}, which protects the writer the way the fixed pool size does. The combine
+ * owns its threads like a structured scope: a failing file only ends its own thread (its
+ * error is reported and the other files continue, as before), while a writer failure cancels
+ * every thread that is still running.
+ */
+final class ParallelProspectsCombiner {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 16;
+
+    /** Bits of a row sequence that hold the row number, the file index goes above them. */
+    private static final int ROW_BITS = 40;
+
+    private final List<Path> csvFiles;
+    private final int threads;
+    private final List<String> masterHeaders;
+    private final boolean virtualThreads;
+
+    /**
+     * @param csvFiles Files in processing order
+     * @param threads Number of parser threads, or with virtual threads the most files in flight
+     * @param masterHeaders Output columns, or null to take the headers of the first readable file
+     * @param virtualThreads true to parse every file on its own virtual thread
+     */
+    ParallelProspectsCombiner(List<Path> csvFiles, int threads, List<String> masterHeaders,
+                              boolean virtualThreads) {
+        this.csvFiles = csvFiles;
+        this.threads = threads;
+        this.masterHeaders = masterHeaders;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Combines all files into the given output file and prints the usual statistics.
+     *
+     * @param outputChannel Channel of the combined output file
+     * @param outputFile Output path, only used for the summary
+     * @throws IOException if writing the combined output fails
+     */
+    void combine(FileChannel outputChannel, String outputFile) throws IOException {
+        List<String> headers = masterHeaders != null ? masterHeaders : readMasterHeaders();
+
+        int totalRecords = 0;
+        int processedFiles = 0;
+        int skippedRecords = 0;
+        int duplicateRecords = 0;
+        boolean isFirstFile = true;
+
+        // Track unique emails to avoid duplicates (only touched by the writer thread)
+        SpillingDeduplicator uniqueEmails = Main2.createDeduplicator(outputFile);
+        // Emails routed to shard threads or claimed by the workers, or null to deduplicate on the writer thread
+        ShardedDeduplicator shardedEmails = createShardedEmails(csvFiles.size());
+        ConcurrentFingerprintSet claimedEmails = shardedEmails == null ? createClaimedEmails() : null;
+
+        ExecutorService pool = virtualThreads ? newVirtualThreadExecutor() : null;
+        boolean threadPerFile = pool != null;
+        if (pool == null) {
+            if (virtualThreads) {
+                System.out.println("Virtual threads need Java 21 or newer, using " + threads + " platform threads");
+            }
+            pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "prospects-parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        try {
+            if (shardedEmails != null) {
+                shardedEmails.start();
+            }
+            ReorderBuffer<Chunk> chunks = new ReorderBuffer<>(threads * QUEUE_CAPACITY, true);
+            chunks.finish(ReorderBuffer.sequence(csvFiles.size(), 0));
+            List<Runnable> tasks = new ArrayList<>();
+            for (int fileIndex = 0; fileIndex < csvFiles.size(); fileIndex++) {
+                Path csvFile = csvFiles.get(fileIndex);
+                List<String> outputHeaders = headers;
+                int index = fileIndex;
+                tasks.add(() -> parseFile(csvFile, outputHeaders, chunks, claimedEmails, shardedEmails, index));
+            }
+            if (threadPerFile) {
+                pool.execute(launcher(pool, tasks));
+            } else {
+                // Submit files in directory order so earlier files always get a worker first
+                tasks.forEach(pool::execute);
+            }
+
+            CsvOutput output = null;
+
+            for (int fileIndex = 0; fileIndex < csvFiles.size(); fileIndex++) {
+                Path csvFile = csvFiles.get(fileIndex);
+                System.out.println("Processing file: " + csvFile.getFileName());
+
+                int fileRecords = 0;
+                int fileSkipped = 0;
+                int fileDuplicates = 0;
+                int fileDeferred = 0;
+
+                Chunk chunk;
+                do {
+                    chunk = chunks.take();
+
+                    if (chunk.currentHeaders != null) {
+                        if (isFirstFile) {
+                            if (headers == null) {
+                                headers = chunk.currentHeaders;
+                            }
+                            output = CsvOutput.open(outputChannel, headers);
+                            isFirstFile = false;
+                            System.out.println("Headers found: " + String.join(", ", headers));
+                        }
+                        if (chunk.mapping.differs(masterHeaders != null)) {
+                            System.out.println("Warning: File " + csvFile.getFileName() +
+                                " has different headers. Expected: " + headers +
+                                ", Found: " + chunk.currentHeaders);
+                            System.out.println("  - " + chunk.mapping.describe());
+                        }
+                    }
+
+                    fileSkipped += chunk.skipped;
+                    skippedRecords += chunk.skipped;
+
+                    for (ParsedRow row : chunk.rows) {
+                        // Check for duplicate email and skip if already processed. Every row of
+                        // the earlier files and of this one up to here has been claimed already
+                        int status;
+                        if (shardedEmails != null) {
+                            status = await(row);
+                        } else if (claimedEmails != null) {
+                            status = claimedEmails.isFirst(row.fingerprint, row.sequence)
+                                ? SpillingDeduplicator.UNIQUE : SpillingDeduplicator.DUPLICATE;
+                        } else {
+                            status = uniqueEmails.add(row.email, fileIndex);
+                        }
+                        if (status == SpillingDeduplicator.DUPLICATE) {
+                            fileDuplicates++;
+                            duplicateRecords++;
+                            continue;
+                        }
+
+                        if (status == SpillingDeduplicator.DEFERRED) {
+                            uniqueEmails.defer(row.values);
+                            fileDeferred++;
+                        } else {
+                            output.printRecord(row.values);
+                        }
+                        fileRecords++;
+                        totalRecords++;
+                    }
+                } while (!chunk.last);
+
+                if (chunk.error instanceof IOException) {
+                    System.err.println("Error reading file " + csvFile.getFileName() + ": " + chunk.error.getMessage());
+                    // Continue with other files
+                    continue;
+                } else if (chunk.error != null) {
+                    throw new IOException("Failed to process file " + csvFile.getFileName(), chunk.error);
+                }
+
+                System.out.println("  - Records from " + csvFile.getFileName() + ": " + fileRecords);
+                if (fileSkipped > 0) {
+                    System.out.println("  - Skipped records (no email): " + fileSkipped);
+                }
+                if (fileDuplicates > 0) {
+                    System.out.println("  - Duplicate emails skipped: " + fileDuplicates);
+                }
+                if (fileDeferred > 0) {
+                    System.out.println("  - Records pending on-disk duplicate check: " + fileDeferred);
+                }
+                processedFiles++;
+            }
+
+            if (output != null) {
+                int spilledDuplicates = Main2.resolveDeferred(uniqueEmails, output, csvFiles);
+                totalRecords -= spilledDuplicates;
+                duplicateRecords += spilledDuplicates;
+                output.flush();
+            }
+        } finally {
+            // Unblocks workers that are still waiting on a full window after a write failure
+            pool.shutdownNow();
+            if (threadPerFile) {
+                // No virtual thread outlives the combine
+                awaitTermination(pool);
+            }
+            uniqueEmails.close();
+            if (shardedEmails != null) {
+                shardedEmails.stop();
+            }
+        }
+
+        Main2.printSummary(processedFiles, totalRecords, skippedRecords, duplicateRecords,
+            shardedEmails != null ? shardedEmails.uniqueEmails()
+                : claimedEmails != null ? claimedEmails.size() : uniqueEmails.uniqueEmails(), outputFile);
+    }
+
+    /**
+     * Starts one virtual thread per file, in directory order, with at most {@code threads}
+     * files in flight. The writer drains the files in the same order, so the file it waits for
+     * has always been started: every permit is held by that file or a later one.
+     *
+     * @param pool Virtual thread per task executor
+     * @param tasks Parse task of every file, in directory order
+     * @return Launcher task, ended by an interrupt when the combine is cancelled
+     */
+    private Runnable launcher(ExecutorService pool, List<Runnable> tasks) {
+        Semaphore permits = new Semaphore(threads);
+        return () -> {
+            try {
+                for (Runnable task : tasks) {
+                    permits.acquire();
+                    pool.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // Cancelled: the writer has stopped and shut the executor down
+            }
+        };
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task. Looked up
+     * reflectively, so the Java 17 build gets virtual threads whenever the runtime has them.
+     *
+     * @return The executor, or null if this runtime has no (final) virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Before Java 19 the method is missing, on 19 and 20 it is a preview API
+            return null;
+        }
+    }
+
+    /**
+     * Creates the shard threads of 'combine.dedup.shards', unless a dedup budget asks for the
+     * writer's spilling deduplication.
+     *
+     * @param files Number of files
+     * @return Deduplicator, not started yet, or null
+     */
+    private static ShardedDeduplicator createShardedEmails(int files) {
+        int shards = Integer.getInteger(Main2.DEDUP_SHARDS_PROPERTY, 0);
+        if (shards <= 0 || Long.getLong(Main2.DEDUP_BUDGET_PROPERTY, 0) > 0) {
+            return null;
+        }
+        return new ShardedDeduplicator(System.getProperty(Main2.DEDUP_SET_PROPERTY, "hashset"), shards, files);
+    }
+
+    /**
+     * Creates the set the workers claim rows in, when 'combine.dedup.set' asks for the
+     * concurrent set. With a dedup budget the writer keeps deduplicating, as only it can spill.
+     *
+     * @return Empty set keeping first sequences, or null
+     */
+    private static ConcurrentFingerprintSet createClaimedEmails() {
+        if (!"concurrent".equals(System.getProperty(Main2.DEDUP_SET_PROPERTY))
+            || Long.getLong(Main2.DEDUP_BUDGET_PROPERTY, 0) > 0) {
+            return null;
+        }
+        return new ConcurrentFingerprintSet(0, true);
+    }
+
+    /**
+     * Reads the master headers the same way the sequential combine does: from the first
+     * file whose header can be parsed. Only the header line of each candidate is read.
+     *
+     * @return Master header list, or null if no file has a readable header
+     */
+    private List<String> readMasterHeaders() {
+        for (Path csvFile : csvFiles) {
+            try (CsvSource csvSource = CsvSource.open(csvFile)) {
+                return new ArrayList<>(csvSource.getHeaderNames());
+            } catch (IOException | RuntimeException e) {
+                // The worker for this file reports the error when its turn comes
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Worker body: parses one prospect file and hands the rows to the writer in batches.
+     * Deduplication is left to the writer so that file order decides which row wins; with
+     * claimed emails the worker claims every row before handing it over, with shards it routes
+     * every row to its shard first.
+     *
+     * @param claimedEmails Set to claim rows in, or null
+     * @param shardedEmails Shards to route rows to, or null
+     * @param fileIndex Position of the file in the processing order
+     */
+    private static void parseFile(Path csvFile, List<String> masterHeaders, ReorderBuffer<Chunk> chunks,
+                                  ConcurrentFingerprintSet claimedEmails, ShardedDeduplicator shardedEmails,
+                                  int fileIndex) {
+        Chunk chunk = new Chunk();
+        int chunkIndex = 0;
+        long sequence = (long) fileIndex << ROW_BITS;
+        ShardedDeduplicator.Router router = shardedEmails != null ? shardedEmails.open(fileIndex) : null;
+
+        try (CsvSource csvSource = CsvSource.open(csvFile)) {
+
+            List<String> currentHeaders = new ArrayList<>(csvSource.getHeaderNames());
+            List<String> headers = masterHeaders != null ? masterHeaders : currentHeaders;
+            ProspectColumnMapping mapping = ProspectColumnMapping.map(headers, csvSource);
+            chunk.currentHeaders = currentHeaders;
+            chunk.mapping = mapping;
+
+            while (csvSource.nextRecord()) {
+                // Use personal_email if email is empty, skip the record if both are
+                int emailColumn = mapping.emailSource(csvSource);
+                if (emailColumn == ProspectColumnMapping.MISSING) {
+                    chunk.skipped++;
+                    continue;
+                }
+                String finalEmailValue = csvSource.get(emailColumn);
+
+                ParsedRow row = new ParsedRow(finalEmailValue, mapping.values(csvSource, finalEmailValue));
+                if (claimedEmails != null || router != null) {
+                    row.fingerprint = EmailNormalizer.fingerprint(finalEmailValue);
+                    row.sequence = sequence++;
+                    if (router != null) {
+                        router.route(row);
+                    } else {
+                        claimedEmails.claim(row.fingerprint, row.sequence);
+                    }
+                }
+                chunk.rows.add(row);
+                if (chunk.rows.size() >= BATCH_SIZE) {
+                    // The writer waits for the verdicts of these rows
+                    if (router != null) {
+                        router.flush();
+                    }
+                    chunks.put(ReorderBuffer.sequence(fileIndex, chunkIndex++), chunk, false);
+                    chunk = new Chunk();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Writer gave up, nobody is waiting for the rest of this file
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            chunk.error = e;
+        }
+
+        chunk.last = true;
+        try {
+            if (router != null) {
+                router.flush();
+                router.close();
+            }
+            chunks.put(ReorderBuffer.sequence(fileIndex, chunkIndex), chunk, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTermination(ExecutorService pool) throws IOException {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for parser threads", e);
+        }
+    }
+
+    private static int await(ParsedRow row) throws IOException {
+        try {
+            return ShardedDeduplicator.await(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the dedup shards", e);
+        }
+    }
+
+    /**
+     * A batch of parsed rows from one file. The first chunk of a file carries its headers,
+     * the last one is flagged and may carry the error that stopped the file.
+     */
+    private static final class Chunk {
+        final List<ParsedRow> rows = new ArrayList<>();
+        List<String> currentHeaders;
+        ProspectColumnMapping mapping;
+        int skipped;
+        Exception error;
+        boolean last;
+    }
+
+    /**
+     * A record that passed the email check, projected onto the master headers.
+     */
+    static final class ParsedRow {
+        final String email;
+        final String[] values;
+        long fingerprint;
+        long sequence;
+        /** Verdict of the dedup shard, see {@link ShardedDeduplicator#await}. */
+        volatile int status = ShardedDeduplicator.PENDING;
+
+        ParsedRow(String email, String[] values) {
+            this.email = email;
+            this.values = values;
+        }
+    }
+}
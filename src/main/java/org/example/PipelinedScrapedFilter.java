@@ -0,0 +1,150 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pipelined variant of the record loop in {@link Main#filterScrapedFile}.
+ *
+ * Reading, parsing and writing run in separate stages so disk reads and output formatting
+ * overlap instead of taking turns:
+ * - A reader thread reads scraped.csv in blocks of {@link #BLOCK_SIZE} bytes and cuts each
+ *   block after its last complete record, using {@link CsvBoundaryScanner} so line breaks
+ *   inside quoted values (e.g. in Bio) never split a record
+ * - Parser threads tokenize and filter whole blocks with {@link ScrapedBlockFilter} and
+ *   format the kept rows of a block into one batch of output bytes
+ * - The calling thread is the writer: it takes the batches in block order from a
+ *   {@link ReorderBuffer} and appends them to the output, so rows come out exactly in input
+ *   order (unordered, batches are written as they finish)
+ *
+ * The reorder window is twice as long as there are parser threads. When the writer falls
+ * behind the window fills up and the reader waits, so at most that many blocks are in memory
+ * at once.
+ */
+final class PipelinedScrapedFilter {
+
+    static final int BLOCK_SIZE = 4 << 20;
+    private static final int MAX_BLOCK_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int threads;
+    private final ScrapedBlockFilter blockFilter;
+    private final boolean ordered;
+
+    /**
+     * @param threads Number of parser threads
+     * @param blockFilter Filter applied to every block
+     * @param ordered false to write the blocks as they finish instead of in file order
+     */
+    PipelinedScrapedFilter(int threads, ScrapedBlockFilter blockFilter, boolean ordered) {
+        this.threads = threads;
+        this.blockFilter = blockFilter;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Filters every data record of the input file into the output.
+     *
+     * @param inputFile Scraped CSV file; its header record is skipped
+     * @param output Output, with the header already written
+     * @param counts Counters to add the filtered rows to
+     * @throws IOException if reading, parsing or writing fails
+     */
+    void filter(Path inputFile, CsvOutput output, Main.FilterCounts counts) throws IOException {
+        ReorderBuffer<ScrapedBlockFilter.Batch> batches = new ReorderBuffer<>(threads * 2, ordered);
+
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "scraped-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread reader = new Thread(() -> readBlocks(inputFile, parsers, batches), "scraped-reader");
+        reader.setDaemon(true);
+
+        try {
+            reader.start();
+            ScrapedBlockFilter.Batch batch;
+            while ((batch = batches.take()) != null) {
+                output.write(batch.bytes);
+                counts.add(batch.counts);
+            }
+        } finally {
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Reader stage: cuts the file into blocks of whole records and submits one parse task per
+     * block. Ends the batches with their count, or with the failure that stopped it.
+     */
+    private void readBlocks(Path inputFile, ExecutorService parsers,
+                            ReorderBuffer<ScrapedBlockFilter.Batch> batches) {
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            CsvBoundaryScanner scanner = new CsvBoundaryScanner(CsvBoundaryScanner.FIELD_START);
+            byte[] data = new byte[BLOCK_SIZE];
+            int filled = 0;
+            int scanned = 0;
+            long blockStart = 0;
+            boolean endOfFile = false;
+            boolean headerPending = true;
+            long blocks = 0;
+
+            while (true) {
+                while (!endOfFile && filled < data.length) {
+                    int read = channel.read(ByteBuffer.wrap(data, filled, data.length - filled));
+                    if (read < 0) {
+                        endOfFile = true;
+                    } else {
+                        filled += read;
+                    }
+                }
+
+                // Everything that is left at the end of the file is the last block
+                int boundary = endOfFile ? filled : scanner.scan(data, scanned, filled);
+                scanned = filled;
+                if (boundary < 0) {
+                    // A single record fills the whole block: grow it
+                    if (data.length == MAX_BLOCK_SIZE) {
+                        throw new IOException("CSV record at byte " + blockStart + " is larger than "
+                            + MAX_BLOCK_SIZE + " bytes");
+                    }
+                    data = Arrays.copyOf(data, (int) Math.min((long) data.length * 2, MAX_BLOCK_SIZE));
+                    continue;
+                }
+
+                if (boundary > 0) {
+                    ByteBuffer block = ByteBuffer.wrap(data, 0, boundary);
+                    long start = blockStart;
+                    boolean skipHeader = headerPending;
+                    headerPending = headerPending && !CsvBoundaryScanner.containsRecord(block);
+                    long sequence = blocks++;
+                    batches.awaitWindow(sequence);
+                    parsers.execute(() -> blockFilter.filterInto(batches, sequence, block, start, skipHeader));
+                }
+                if (endOfFile) {
+                    break;
+                }
+
+                // Carry the incomplete record over to the next block
+                int carry = filled - boundary;
+                byte[] next = new byte[Math.max(BLOCK_SIZE, carry * 2)];
+                System.arraycopy(data, boundary, next, 0, carry);
+                data = next;
+                filled = carry;
+                scanned = carry;
+                blockStart += boundary;
+            }
+            batches.finish(blocks);
+        } catch (InterruptedException e) {
+            // Writer gave up, nobody is waiting for the rest of the file
+        } catch (IOException | RuntimeException e) {
+            batches.fail(e);
+        }
+    }
+}
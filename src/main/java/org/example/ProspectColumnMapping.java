@@ -0,0 +1,171 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the master headers of the combined output onto the columns of one prospect file.
+ *
+ * Built once per file when its header is read, so the row loop reads every value by index
+ * and never looks a column up by name. Master headers the file does not have map to
+ * {@link #MISSING} and are written as empty values; the 'email' master column maps to
+ * {@link #EMAIL} and receives the email / personal_email fallback value.
+ */
+final class ProspectColumnMapping {
+
+    /** Output column that the file does not have: written empty. */
+    static final int MISSING = -1;
+
+    /** Output column that receives the chosen email value. */
+    static final int EMAIL = -2;
+
+    private final List<String> masterHeaders;
+    private final List<String> fileHeaders;
+    private final int emailColumn;
+    private final int personalEmailColumn;
+    private final int[] columns;
+
+    private ProspectColumnMapping(List<String> masterHeaders, List<String> fileHeaders, int emailColumn,
+                                  int personalEmailColumn, int[] columns) {
+        this.masterHeaders = masterHeaders;
+        this.fileHeaders = fileHeaders;
+        this.emailColumn = emailColumn;
+        this.personalEmailColumn = personalEmailColumn;
+        this.columns = columns;
+    }
+
+    /**
+     * Resolves every master header against the header of a file. Lookups go through
+     * {@link CsvSource#indexOf}, so duplicate names resolve to their last occurrence.
+     *
+     * @param masterHeaders Columns of the combined output
+     * @param csvSource File whose header has been read
+     * @return Mapping for the records of that file
+     */
+    static ProspectColumnMapping map(List<String> masterHeaders, CsvSource csvSource) {
+        int[] columns = new int[masterHeaders.size()];
+        for (int i = 0; i < columns.length; i++) {
+            String header = masterHeaders.get(i);
+            if (header.equalsIgnoreCase("email")) {
+                columns[i] = EMAIL;
+            } else {
+                int index = csvSource.indexOf(header);
+                columns[i] = index >= 0 ? index : MISSING;
+            }
+        }
+        return new ProspectColumnMapping(masterHeaders, csvSource.getHeaderNames(),
+            csvSource.indexOf("email"), csvSource.indexOf("personal_email"), columns);
+    }
+
+    /**
+     * Picks the column the email of the current record comes from: 'email', or 'personal_email'
+     * if email is blank. Values of a {@link MappedCsvSource} are checked as UTF-8 bytes, so
+     * records without an email are skipped without decoding either value.
+     *
+     * @param csvSource Source positioned on a record of the mapped file
+     * @return Index of the column holding the email, or {@link #MISSING} if both are blank or
+     *         the file has neither column
+     */
+    int emailSource(CsvSource csvSource) {
+        if (!isBlank(csvSource, emailColumn)) {
+            return emailColumn;
+        }
+        if (!isBlank(csvSource, personalEmailColumn)) {
+            return personalEmailColumn;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Projects the current record onto the master headers.
+     *
+     * @param csvSource Source positioned on a record of the mapped file
+     * @param finalEmailValue Email value chosen for the record
+     * @return One value per master header
+     */
+    String[] values(CsvSource csvSource, String finalEmailValue) {
+        String[] values = new String[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            int column = columns[i];
+            if (column >= 0) {
+                values[i] = csvSource.get(column);
+            } else {
+                values[i] = column == EMAIL ? finalEmailValue : "";
+            }
+        }
+        return values;
+    }
+
+    private static boolean isBlank(CsvSource csvSource, int column) {
+        if (column < 0) {
+            return true;
+        }
+        if (csvSource instanceof MappedCsvSource && ((MappedCsvSource) csvSource).isSlice(column)) {
+            MappedCsvSource mappedSource = (MappedCsvSource) csvSource;
+            return EmailNormalizer.isBlank(mappedSource.buffer(), mappedSource.fieldOffset(column),
+                mappedSource.fieldLength(column));
+        }
+        return EmailNormalizer.isBlank(csvSource.get(column));
+    }
+
+    /**
+     * Decides whether the file gets the "different headers" warning. Against the first file's
+     * headers any difference is reported. Union headers differ from nearly every file by design,
+     * so there only a file without both email columns, or with columns the union lacks (it
+     * could not be read when the union was built), is reported.
+     *
+     * @param unionHeaders true if the master headers are the union of all files
+     * @return true if the file's headers are worth a warning
+     */
+    boolean differs(boolean unionHeaders) {
+        if (!unionHeaders) {
+            return !masterHeaders.equals(fileHeaders);
+        }
+        if (emailColumn < 0 && personalEmailColumn < 0) {
+            return true;
+        }
+        return !masterHeaders.containsAll(fileHeaders);
+    }
+
+    /**
+     * Describes how the file's columns were matched, for the "different headers" warning.
+     *
+     * @return Missing master columns, ignored file columns and the email source
+     */
+    String describe() {
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == MISSING) {
+                missing.add(masterHeaders.get(i));
+            }
+        }
+
+        boolean[] used = new boolean[fileHeaders.size()];
+        for (int column : columns) {
+            if (column >= 0) {
+                used[column] = true;
+            }
+        }
+        if (emailColumn >= 0) {
+            used[emailColumn] = true;
+        }
+        if (personalEmailColumn >= 0) {
+            used[personalEmailColumn] = true;
+        }
+        List<String> ignored = new ArrayList<>();
+        for (int i = 0; i < used.length; i++) {
+            if (!used[i]) {
+                ignored.add(fileHeaders.get(i));
+            }
+        }
+
+        String emailSource;
+        if (emailColumn >= 0) {
+            emailSource = personalEmailColumn >= 0 ? "email, falling back to personal_email" : "email";
+        } else {
+            emailSource = personalEmailColumn >= 0 ? "personal_email" : "none, every record is skipped";
+        }
+
+        return "Column mapping: written empty " + missing + ", ignored " + ignored + ", email from " + emailSource;
+    }
+}
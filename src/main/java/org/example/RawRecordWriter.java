@@ -0,0 +1,135 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Passthrough output for {@link Main#filterScrapedFile}: copies the kept records of a
+ * {@link MappedCsvSource} to the output as raw bytes instead of re-quoting every value through
+ * a CSVPrinter.
+ *
+ * The output columns are grouped into runs of adjacent source columns, and each run is copied
+ * as one slice from the start of its first field to the end of its last, delimiters included,
+ * followed by the record's own line break. When every column is kept (or only trailing columns
+ * are removed) a record is a single copy from the mapped file into the output buffer. Values
+ * keep their original quoting, surrounding whitespace and line breaks, so the output rows are
+ * byte-identical to the input rows, minus the removed columns. Fields missing from a short
+ * record are written as empty values.
+ *
+ * The buffer is written to the output channel in blocks of {@link #BUFFER_SIZE} bytes.
+ */
+final class RawRecordWriter {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // Output runs of adjacent source columns: [runFirst[i], runLast[i]]
+    private final int[] runFirst;
+    private final int[] runLast;
+
+    /**
+     * @param channel Output channel, positioned where the records go; not closed by the writer
+     * @param projection Source column index of every output column
+     */
+    RawRecordWriter(FileChannel channel, int[] projection) {
+        this.channel = channel;
+        int runs = 0;
+        for (int i = 0; i < projection.length; i++) {
+            if (i == 0 || projection[i] != projection[i - 1] + 1) {
+                runs++;
+            }
+        }
+        runFirst = new int[runs];
+        runLast = new int[runs];
+        int run = -1;
+        for (int i = 0; i < projection.length; i++) {
+            if (i == 0 || projection[i] != projection[i - 1] + 1) {
+                runFirst[++run] = projection[i];
+            }
+            runLast[run] = projection[i];
+        }
+    }
+
+    /**
+     * Writes the kept columns of the header record.
+     *
+     * @param headerRecord Raw header record from {@link MappedCsvSource#headerRecord()}
+     */
+    void writeHeader(ByteBuffer headerRecord) throws IOException {
+        MappedCsvSource header = new MappedCsvSource(headerRecord, 0);
+        if (header.nextRecord()) {
+            write(header);
+        }
+    }
+
+    /**
+     * Writes the kept columns of the current record of the source.
+     *
+     * @param source Source positioned on a record
+     */
+    void write(MappedCsvSource source) throws IOException {
+        ByteBuffer buffer = source.buffer();
+        int size = source.size();
+        boolean first = true;
+
+        for (int run = 0; run < runFirst.length; run++) {
+            int column = runFirst[run];
+            int last = Math.min(runLast[run], size - 1);
+            if (column <= last) {
+                if (!first) {
+                    put((byte) ',');
+                }
+                int start = source.rawStart(column);
+                put(buffer, start, source.rawEnd(last) - start);
+                first = false;
+                column = last + 1;
+            }
+            // Columns past the end of a short record
+            for (; column <= runLast[run]; column++) {
+                if (!first) {
+                    put((byte) ',');
+                }
+                first = false;
+            }
+        }
+
+        // The record's own line break; the last record of a file may have none
+        int lineBreak = size > 0 ? source.rawEnd(size - 1) : source.recordEnd();
+        put(buffer, lineBreak, source.recordEnd() - lineBreak);
+    }
+
+    /**
+     * Writes everything buffered to the channel.
+     */
+    void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    private void put(byte b) throws IOException {
+        if (!output.hasRemaining()) {
+            flush();
+        }
+        output.put(b);
+    }
+
+    private void put(ByteBuffer source, int offset, int length) throws IOException {
+        if (length > output.remaining()) {
+            flush();
+            if (length > output.capacity()) {
+                ByteBuffer slice = source.slice(offset, length);
+                while (slice.hasRemaining()) {
+                    channel.write(slice);
+                }
+                return;
+            }
+        }
+        output.put(output.position(), source, offset, length);
+        output.position(output.position() + length);
+    }
+}
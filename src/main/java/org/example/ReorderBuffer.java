@@ -0,0 +1,177 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands output batches from worker threads to the single writer thread of a parallel filter
+ * or combine, in sequence order.
+ *
+ * Workers {@link #put} batches with their sequence number as they finish, in any order; the
+ * writer {@link #take}s them in sequence order, so the output is the same as from a single
+ * thread. Sequences are contiguous numbers, or (group, index) pairs from {@link #sequence}
+ * when the number of batches per group (e.g. per input file) is only known at its end: the
+ * batch that ends a group is put with endsGroup set, and the writer continues at index 0 of
+ * the next group.
+ *
+ * The buffer is bounded by its window, so a slow batch cannot make the others pile up:
+ * - Producers that number their batches in order (a reader handing blocks to a pool) call
+ *   {@link #awaitWindow} before starting a batch, so at most window batches are started but
+ *   not taken
+ * - Other producers block in {@link #put} while window batches are buffered, except with the
+ *   batch the writer is waiting for
+ *
+ * In unordered mode the writer takes batches as they arrive instead, for runs that only care
+ * about throughput. That mode needs contiguous sequences.
+ *
+ * @param <T> Batch type
+ */
+final class ReorderBuffer<T> {
+
+    private static final int GROUP_SHIFT = 32;
+
+    private final int window;
+    private final boolean ordered;
+    private final Map<Long, Entry<T>> waiting = new HashMap<>();
+    private final ArrayDeque<T> arrived = new ArrayDeque<>();
+    private long next;
+    private long taken;
+    private long end = Long.MAX_VALUE;
+    private Throwable failure;
+
+    /**
+     * @param window Most batches started or buffered but not taken yet
+     * @param ordered false to hand batches to the writer as they arrive
+     */
+    ReorderBuffer(int window, boolean ordered) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Reorder window must be positive: " + window);
+        }
+        this.window = window;
+        this.ordered = ordered;
+    }
+
+    /**
+     * @param group Group, e.g. the index of the input file
+     * @param index Position of the batch within its group
+     * @return Sequence of the batch
+     */
+    static long sequence(int group, int index) {
+        return (long) group << GROUP_SHIFT | index;
+    }
+
+    /**
+     * @param sequence Contiguous sequence of a batch
+     * @return true if the batch can be started without exceeding the window
+     */
+    synchronized boolean admits(long sequence) {
+        return sequence < taken + window;
+    }
+
+    /**
+     * Waits until the batch with the given contiguous sequence fits into the window. Not for
+     * the writer thread itself: it checks {@link #admits} and takes batches instead.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void awaitWindow(long sequence) throws InterruptedException {
+        while (!admits(sequence) && failure == null) {
+            wait();
+        }
+    }
+
+    /**
+     * Adds a finished batch.
+     *
+     * @param sequence Sequence of the batch
+     * @param batch The batch
+     * @param endsGroup true for the last batch of a group
+     * @throws InterruptedException if interrupted while the window is full
+     */
+    synchronized void put(long sequence, T batch, boolean endsGroup) throws InterruptedException {
+        while (waiting.size() + arrived.size() >= window && (!ordered || sequence != next) && failure == null) {
+            wait();
+        }
+        if (ordered) {
+            waiting.put(sequence, new Entry<>(batch, endsGroup));
+        } else {
+            arrived.add(batch);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Declares the end of the batches: the sequence after the last batch, e.g. the batch count
+     * or the first sequence of the group after the last one.
+     */
+    synchronized void finish(long endSequence) {
+        end = endSequence;
+        notifyAll();
+    }
+
+    /**
+     * Stops the writer: its next {@link #take} throws the failure.
+     *
+     * @param error What stopped a producer
+     */
+    synchronized void fail(Throwable error) {
+        if (failure == null) {
+            failure = error;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Removes the next batch, in sequence order unless unordered, waiting for it if needed.
+     *
+     * @return The batch, or null after the last one
+     * @throws IOException if a producer failed, or the writer was interrupted
+     */
+    synchronized T take() throws IOException {
+        try {
+            while (true) {
+                if (failure != null) {
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    throw new IOException("Failed to produce output", failure);
+                }
+                if (ordered ? next >= end : taken >= end) {
+                    return null;
+                }
+
+                T batch = null;
+                if (ordered) {
+                    Entry<T> entry = waiting.remove(next);
+                    if (entry != null) {
+                        next = entry.endsGroup ? sequence((int) (next >>> GROUP_SHIFT) + 1, 0) : next + 1;
+                        batch = entry.batch;
+                    }
+                } else {
+                    batch = arrived.poll();
+                }
+                if (batch != null) {
+                    taken++;
+                    notifyAll();
+                    return batch;
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for output batches", e);
+        }
+    }
+
+    private static final class Entry<T> {
+        final T batch;
+        final boolean endsGroup;
+
+        Entry(T batch, boolean endsGroup) {
+            this.batch = batch;
+            this.endsGroup = endsGroup;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Hash join with the build side reversed, for a small scraped.csv and a huge checked.csv.
+ *
+ * Instead of loading every verified email, the emails of scraped.csv are loaded into an
+ * {@link EmailSet} of the 'verified.set' kind and checked.csv is streamed against them; the
+ * scraped emails it contains are collected as the verified ones. A second pass over
+ * scraped.csv then prints the rows with a verified email, in file order. Memory depends only
+ * on the number of scraped emails, at the cost of reading scraped.csv twice.
+ */
+final class ReverseHashJoin implements ScrapedJoin {
+
+    private final Path checkedFile;
+    private final Path scrapedFile;
+
+    ReverseHashJoin(Path checkedFile, Path scrapedFile) {
+        this.checkedFile = checkedFile;
+        this.scrapedFile = scrapedFile;
+    }
+
+    @Override
+    public void filter(CsvSource csvSource, CsvOutput output, int emailIndex, int[] projection,
+                       Main.FilterCounts counts) throws IOException {
+        // Build: the emails of the scraped rows
+        EmailSet scrapedEmails = EmailSet.create(0);
+        while (csvSource.nextRecord()) {
+            String email = csvSource.get(emailIndex);
+            if (!EmailNormalizer.isBlank(email)) {
+                scrapedEmails.add(email);
+            }
+        }
+
+        // Probe: stream checked.csv and keep the scraped emails it verifies
+        EmailSet verifiedEmails = EmailSet.create(0);
+        try (CsvSource checked = CsvSource.open(checkedFile)) {
+            while (checked.nextRecord()) {
+                String email = Main.checkedEmail(checked);
+                if (email != null && scrapedEmails.contains(email)) {
+                    verifiedEmails.add(email);
+                }
+            }
+        }
+        System.out.println("Reverse hash join: " + verifiedEmails.size() + " of " + scrapedEmails.size()
+            + " scraped emails verified, build set: " + scrapedEmails.memoryReport());
+
+        // Second pass over scraped.csv in file order
+        try (CsvSource scraped = CsvSource.open(scrapedFile)) {
+            Main.filterRecords(scraped, output, emailIndex, projection, verifiedEmails, null, counts);
+        }
+    }
+}
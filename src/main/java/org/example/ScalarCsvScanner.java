@@ -0,0 +1,39 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link CsvScanner} that looks at one byte at a time. Used when the Vector API is not
+ * available, and as the reference for {@link VectorCsvScanner}.
+ */
+final class ScalarCsvScanner implements CsvScanner {
+
+    @Override
+    public int delimiterOrLineBreak(ByteBuffer buffer, int from, int limit) {
+        int p = from;
+        while (p < limit) {
+            byte b = buffer.get(p);
+            if (b == DELIMITER || b == LF || b == CR) {
+                break;
+            }
+            p++;
+        }
+        return p;
+    }
+
+    @Override
+    public int closingQuote(ByteBuffer buffer, int from, int limit) {
+        int escaped = 0;
+        for (int p = from; p < limit; p++) {
+            if (buffer.get(p) == QUOTE) {
+                if (p + 1 < limit && buffer.get(p + 1) == QUOTE) {
+                    escaped = ESCAPED;
+                    p++;
+                    continue;
+                }
+                return p | escaped;
+            }
+        }
+        return limit | escaped;
+    }
+}
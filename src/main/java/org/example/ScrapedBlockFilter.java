@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Filters self-contained blocks of scraped.csv records, for the multi-threaded filter modes
+ * ({@link PipelinedScrapedFilter}, {@link SplitScrapedFilter}).
+ *
+ * Each block is tokenized with {@link CsvSource#openBlock} and run through
+ * {@link Main#filterRecords}, and the kept rows are formatted into one piece of UTF-8 output
+ * with {@link CsvOutput#openBuffer}, so the caller only has to write the bytes of all blocks in
+ * file order (or, with 'filter.unordered', as they come).
+ */
+final class ScrapedBlockFilter {
+
+    private final int emailIndex;
+    private final int[] projection;
+    private final EmailLookup checkedEmails;
+    private final BlockedBloomFilter bloomFilter;
+
+    ScrapedBlockFilter(int emailIndex, int[] projection, EmailLookup checkedEmails, BlockedBloomFilter bloomFilter) {
+        this.emailIndex = emailIndex;
+        this.projection = projection;
+        this.checkedEmails = checkedEmails;
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Filters one block and formats its kept rows. Safe to call from several threads at once.
+     *
+     * @param block Block content from position 0 to its limit, cut at record boundaries
+     * @param fileOffset Position of the block in the file
+     * @param skipHeader true if the first record of the block is the file header
+     * @return Formatted output and counters of the block
+     * @throws IOException if the block is malformed
+     */
+    Batch filter(ByteBuffer block, long fileOffset, boolean skipHeader) throws IOException {
+        Batch batch = new Batch();
+        CsvOutput output = CsvOutput.openBuffer();
+
+        try (CsvSource csvSource = CsvSource.openBlock(block, fileOffset)) {
+            if (skipHeader) {
+                // The caller has already handled the header
+                csvSource.nextRecord();
+            }
+            Main.filterRecords(csvSource, output, emailIndex, projection, checkedEmails, bloomFilter,
+                batch.counts);
+        }
+
+        batch.bytes = output.bytes();
+        return batch;
+    }
+
+    /**
+     * Worker task: filters one block and hands the result, or the failure, to the writer.
+     *
+     * @param batches Buffer the writer takes the blocks from
+     * @param sequence Position of the block among all blocks of the file
+     */
+    void filterInto(ReorderBuffer<Batch> batches, long sequence, ByteBuffer block, long fileOffset,
+                    boolean skipHeader) {
+        try {
+            batches.put(sequence, filter(block, fileOffset, skipHeader), false);
+        } catch (InterruptedException e) {
+            // Writer gave up, nobody is waiting for this block
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            batches.fail(e);
+        } catch (RuntimeException | Error e) {
+            batches.fail(new IOException("Failed to filter scraped records", e));
+        }
+    }
+
+    /**
+     * Output of one block: the formatted rows that passed the filter, and the block's counters.
+     */
+    static final class Batch {
+        final Main.FilterCounts counts = new Main.FilterCounts();
+        ByteBuffer bytes;
+    }
+}
@@ -0,0 +1,26 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * Joins scraped.csv against checked.csv without holding all verified emails in memory; the
+ * alternative to probing an in-memory {@link EmailSet} in {@link Main#filterRecords}.
+ *
+ * Implementations: {@link GraceHashJoin}, {@link SortMergeJoin}.
+ */
+interface ScrapedJoin {
+
+    /**
+     * Filters the remaining records of scraped.csv and prints the verified ones, kept columns
+     * only, in scraped.csv order.
+     *
+     * @param csvSource Scraped source positioned before the first record to filter
+     * @param output Output receiving the kept columns of every verified record
+     * @param emailIndex Index of the email column
+     * @param projection Source column index of every output column
+     * @param counts Counters to add this run's rows to
+     * @throws IOException if reading or printing fails
+     */
+    void filter(CsvSource csvSource, CsvOutput output, int emailIndex, int[] projection,
+                Main.FilterCounts counts) throws IOException;
+}
@@ -0,0 +1,205 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deduplication for {@link ParallelProspectsCombiner} split over shard threads that each own
+ * a slice of the emails, as an alternative to a shared {@link ConcurrentFingerprintSet}.
+ *
+ * Every row is routed by the upper half of its email fingerprint to one shard, so all rows of an
+ * email meet in the same shard, and each shard keeps its emails in a private {@link EmailSet}
+ * of the 'combine.dedup.set' kind: no lock or CAS is taken on the dedup state. Parser threads
+ * hand rows over in batches through one {@link SpscRing} per file and shard.
+ *
+ * Rows carry a (file, row) sequence tag. A shard drains the rings of one file after the
+ * other, in directory order, and every ring in row order, so it sees its rows in increasing
+ * sequence (which it verifies): the first row it adds for an email is the first one in the
+ * output order, the same first-seen-wins result as the sequential combine. The shard stores
+ * its verdict in the row, and the writer waits for it with {@link #await}.
+ */
+final class ShardedDeduplicator {
+
+    /** Verdict of a row the shard has not seen yet. */
+    static final int PENDING = -1;
+
+    /** Rows per batch handed to a shard. */
+    private static final int BATCH_SIZE = 64;
+
+    /** Batches buffered per file and shard. */
+    private static final int RING_CAPACITY = 64;
+
+    private final String setKind;
+    private final int shardMask;
+    private final EmailSet[] emails;
+    private final Thread[] threads;
+    // Per file, published by its parser: one ring per shard
+    private final AtomicReferenceArray<List<SpscRing<List<ParallelProspectsCombiner.ParsedRow>>>> rings;
+
+    /**
+     * @param setKind 'combine.dedup.set' kind of the per-shard sets
+     * @param shards Number of shard threads, a power of 2
+     * @param files Number of files the rows come from
+     */
+    ShardedDeduplicator(String setKind, int shards, int files) {
+        if (Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException("Number of dedup shards must be a power of 2: " + shards);
+        }
+        this.setKind = setKind;
+        this.shardMask = shards - 1;
+        this.emails = new EmailSet[shards];
+        this.threads = new Thread[shards];
+        this.rings = new AtomicReferenceArray<>(files);
+    }
+
+    /**
+     * Starts the shard threads.
+     */
+    void start() {
+        for (int shard = 0; shard < threads.length; shard++) {
+            int owned = shard;
+            emails[shard] = EmailSet.create(setKind, 0);
+            threads[shard] = new Thread(() -> runShard(owned), "prospects-dedup-shard-" + shard);
+            threads[shard].setDaemon(true);
+            threads[shard].start();
+        }
+    }
+
+    /**
+     * Stops the shard threads, e.g. when the combine fails before every file was routed.
+     */
+    void stop() {
+        for (Thread thread : threads) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Opens the routing of one file. Must be called by the thread that parses the file, which
+     * then routes all of its rows in order and closes the router, also when the file fails.
+     *
+     * @param fileIndex Position of the file in the processing order
+     * @return Router for the rows of the file
+     */
+    Router open(int fileIndex) {
+        List<SpscRing<List<ParallelProspectsCombiner.ParsedRow>>> fileRings = new ArrayList<>(threads.length);
+        for (int shard = 0; shard < threads.length; shard++) {
+            fileRings.add(new SpscRing<>(RING_CAPACITY));
+        }
+        rings.set(fileIndex, fileRings);
+        return new Router(fileRings);
+    }
+
+    /**
+     * Waits until the shard of the row has decided on it. Rows become visible to the shard when
+     * their parser flushes its router, which it does before handing them to the writer.
+     *
+     * @return {@link SpillingDeduplicator#UNIQUE} or {@link SpillingDeduplicator#DUPLICATE}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static int await(ParallelProspectsCombiner.ParsedRow row) throws InterruptedException {
+        int status;
+        for (int attempt = 0; (status = row.status) == PENDING; attempt++) {
+            SpscRing.idle(attempt);
+        }
+        return status;
+    }
+
+    /**
+     * @return Number of unique emails over all shards, once every row has been decided
+     */
+    int uniqueEmails() {
+        int unique = 0;
+        for (EmailSet set : emails) {
+            unique += set.size();
+        }
+        return unique;
+    }
+
+    private void runShard(int shard) {
+        EmailSet set = emails[shard];
+        long previous = -1;
+        try {
+            for (int fileIndex = 0; fileIndex < rings.length(); fileIndex++) {
+                List<SpscRing<List<ParallelProspectsCombiner.ParsedRow>>> fileRings;
+                for (int attempt = 0; (fileRings = rings.get(fileIndex)) == null; attempt++) {
+                    SpscRing.idle(attempt);
+                }
+
+                SpscRing<List<ParallelProspectsCombiner.ParsedRow>> ring = fileRings.get(shard);
+                List<ParallelProspectsCombiner.ParsedRow> batch;
+                while ((batch = ring.take()) != null) {
+                    for (ParallelProspectsCombiner.ParsedRow row : batch) {
+                        if (row.sequence <= previous) {
+                            throw new IllegalStateException("Dedup shard " + shard + " got row sequence "
+                                + row.sequence + " after " + previous);
+                        }
+                        previous = row.sequence;
+                        // Published by the volatile write, together with the set update
+                        row.status = set.add(row.email) ? SpillingDeduplicator.UNIQUE : SpillingDeduplicator.DUPLICATE;
+                    }
+                }
+                fileRings.set(shard, null);
+            }
+        } catch (InterruptedException e) {
+            // The combine was cancelled
+        }
+    }
+
+    /**
+     * Routes the rows of one file to the shards, buffering a batch per shard.
+     */
+    final class Router {
+
+        private final List<SpscRing<List<ParallelProspectsCombiner.ParsedRow>>> fileRings;
+        private final List<List<ParallelProspectsCombiner.ParsedRow>> batches = new ArrayList<>();
+
+        private Router(List<SpscRing<List<ParallelProspectsCombiner.ParsedRow>>> fileRings) {
+            this.fileRings = fileRings;
+            for (int shard = 0; shard < fileRings.size(); shard++) {
+                batches.add(new ArrayList<>(BATCH_SIZE));
+            }
+        }
+
+        /**
+         * @param row Row with its fingerprint and sequence set, after the previous row of the file
+         * @throws InterruptedException if interrupted while the ring of the shard is full
+         */
+        void route(ParallelProspectsCombiner.ParsedRow row) throws InterruptedException {
+            int shard = (int) (row.fingerprint >>> 32) & shardMask;
+            List<ParallelProspectsCombiner.ParsedRow> batch = batches.get(shard);
+            batch.add(row);
+            if (batch.size() >= BATCH_SIZE) {
+                fileRings.get(shard).put(batch);
+                batches.set(shard, new ArrayList<>(BATCH_SIZE));
+            }
+        }
+
+        /**
+         * Hands every buffered row to its shard.
+         *
+         * @throws InterruptedException if interrupted while a ring is full
+         */
+        void flush() throws InterruptedException {
+            for (int shard = 0; shard < batches.size(); shard++) {
+                List<ParallelProspectsCombiner.ParsedRow> batch = batches.get(shard);
+                if (!batch.isEmpty()) {
+                    fileRings.get(shard).put(batch);
+                    batches.set(shard, new ArrayList<>(BATCH_SIZE));
+                }
+            }
+        }
+
+        /**
+         * Ends the file for every shard. Rows still buffered are dropped, so flush first.
+         */
+        void close() {
+            for (SpscRing<List<ParallelProspectsCombiner.ParsedRow>> ring : fileRings) {
+                ring.close();
+            }
+        }
+    }
+}
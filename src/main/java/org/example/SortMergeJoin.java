@@ -0,0 +1,124 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Streaming merge join for a checked.csv and scraped.csv that are both sorted by email.
+ *
+ * Emails are compared in their normalized form ({@link EmailNormalizer#normalize}, then
+ * {@link String#compareTo}), so the files may differ in case and surrounding whitespace. Both
+ * files are read once, in lockstep: the checked.csv cursor only moves forward while its email
+ * is smaller than the current scraped email, so memory use does not depend on the file sizes.
+ * Records without an email (and the status lines of checked.csv) are skipped wherever they
+ * are. Output is in scraped.csv order, like with the other joins.
+ *
+ * {@link JoinPlanner} only picks this join when the first records of both files are sorted.
+ * The order is verified again for every record while joining; a violation stops the join with
+ * an {@link UnsortedInputException}.
+ */
+final class SortMergeJoin implements ScrapedJoin {
+
+    private final Path checkedFile;
+
+    SortMergeJoin(Path checkedFile) {
+        this.checkedFile = checkedFile;
+    }
+
+    @Override
+    public void filter(CsvSource csvSource, CsvOutput output, int emailIndex, int[] projection,
+                       Main.FilterCounts counts) throws IOException {
+        try (CheckedCursor checked = new CheckedCursor(CsvSource.open(checkedFile))) {
+            String previous = null;
+            while (csvSource.nextRecord()) {
+                counts.totalRows++;
+                String email = csvSource.get(emailIndex);
+                if (EmailNormalizer.isBlank(email)) {
+                    continue;
+                }
+
+                String key = EmailNormalizer.normalize(email);
+                if (previous != null && key.compareTo(previous) < 0) {
+                    throw new UnsortedInputException("scraped.csv is not sorted by email at row "
+                        + counts.totalRows + ": " + key + " after " + previous);
+                }
+                previous = key;
+
+                if (checked.seek(key)) {
+                    for (int column : projection) {
+                        output.print(csvSource, column);
+                    }
+                    output.println();
+                    counts.filteredRows++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward-only cursor over the normalized verified emails of checked.csv.
+     */
+    private static final class CheckedCursor implements AutoCloseable {
+
+        private final CsvSource csvSource;
+        private String current;
+        private long records;
+        private boolean started;
+
+        CheckedCursor(CsvSource csvSource) {
+            this.csvSource = csvSource;
+        }
+
+        /**
+         * Moves to the first verified email not smaller than the key.
+         *
+         * @param key Normalized scraped email, not smaller than any earlier key
+         * @return true if checked.csv contains the key
+         * @throws UnsortedInputException if checked.csv turns out not to be sorted
+         */
+        boolean seek(String key) throws IOException {
+            if (!started) {
+                started = true;
+                advance();
+            }
+            while (current != null && current.compareTo(key) < 0) {
+                advance();
+            }
+            return key.equals(current);
+        }
+
+        private void advance() throws IOException {
+            String previous = current;
+            current = null;
+            while (csvSource.nextRecord()) {
+                records++;
+                String email = Main.checkedEmail(csvSource);
+                if (email != null) {
+                    current = EmailNormalizer.normalize(email);
+                    break;
+                }
+            }
+            if (current != null && previous != null && current.compareTo(previous) < 0) {
+                throw new UnsortedInputException("checked.csv is not sorted by email at record "
+                    + records + ": " + current + " after " + previous);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            csvSource.close();
+        }
+    }
+
+    /**
+     * Thrown when an input file of the merge join is found out of order mid-stream.
+     */
+    static final class UnsortedInputException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsortedInputException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * First-seen-wins email deduplication for {@link Main2} that keeps its memory bounded.
+ *
+ * Rows are deduplicated in memory, through the {@link EmailSet} selected by
+ * 'combine.dedup.set', until that set grows past the memory budget. From then on the set is
+ * frozen and only answers whether an email was seen before the spill. Every other row is
+ * deferred to disk:
+ * - its values are appended to a row log, in input order
+ * - its sequence number, file and email go to one of 64 partition files, chosen by the
+ *   email's fingerprint, so all copies of an address land in the same partition
+ *
+ * {@link #finish} deduplicates the partitions one at a time, which yields the sequence numbers
+ * of the first occurrence of each address in ascending order per partition. A partition whose
+ * set outgrows the budget is split again by the next fingerprint bits. Finally the surviving
+ * sequence numbers of all partitions are merged and the row log is replayed, so the deferred
+ * rows come out in exactly the order the in-memory run would have written them.
+ */
+final class SpillingDeduplicator implements Closeable {
+
+    /** The row is the first with its email and can be written right away. */
+    static final int UNIQUE = 0;
+    /** The email was already written, drop the row. */
+    static final int DUPLICATE = 1;
+    /** The row was spilled; {@link #finish} decides whether it is written. */
+    static final int DEFERRED = 2;
+
+    private static final int PARTITION_BITS = 6;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    private static final int MAX_LEVEL = Long.SIZE / PARTITION_BITS - 1;
+    private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+    private final String setKind;
+    private final long budgetBytes;
+    private final Path spillParent;
+    private final EmailSet seen;
+    private int addsSinceCheck;
+
+    private Path spillDirectory;
+    private DataOutputStream rowLog;
+    private DataOutputStream[] partitions;
+    private long[] partitionRows;
+    private long deferredRows;
+    private long deferredUnique;
+    private int nextSpillFile;
+
+    /**
+     * @param setKind {@link EmailSet} kind used for every in-memory set
+     * @param budgetBytes Memory budget of a set, 0 to never spill
+     * @param spillParent Directory in which the spill directory is created when needed
+     */
+    SpillingDeduplicator(String setKind, long budgetBytes, Path spillParent) {
+        this.setKind = setKind;
+        this.budgetBytes = budgetBytes;
+        this.spillParent = spillParent;
+        this.seen = EmailSet.create(setKind, 0);
+    }
+
+    /**
+     * Offers the email of the next row in output order. A {@link #DEFERRED} row must be
+     * followed by {@link #defer} with its values before the next call.
+     *
+     * @param email Raw email value of the row
+     * @param fileIndex Index of the file the row comes from, for the per-file duplicate count
+     * @return {@link #UNIQUE}, {@link #DUPLICATE} or {@link #DEFERRED}
+     * @throws IOException if the row cannot be spilled
+     */
+    int add(String email, int fileIndex) throws IOException {
+        if (rowLog == null) {
+            if (!seen.add(email)) {
+                return DUPLICATE;
+            }
+            checkBudget();
+            return UNIQUE;
+        }
+
+        if (seen.contains(email)) {
+            return DUPLICATE;
+        }
+        int partition = partition(EmailNormalizer.fingerprint(email), 0);
+        writeKey(partitions[partition], deferredRows, fileIndex, email);
+        partitionRows[partition]++;
+        return DEFERRED;
+    }
+
+    /**
+     * Same as {@link #add(String, int)} for the value of a column of the current record. While
+     * nothing is spilled, a value of a {@link MappedCsvSource} is deduplicated as UTF-8 bytes,
+     * so duplicate rows are dropped without decoding their email.
+     *
+     * @param csvSource Source positioned on the row
+     * @param column Column holding the raw email value of the row
+     * @param fileIndex Index of the file the row comes from, for the per-file duplicate count
+     * @return {@link #UNIQUE}, {@link #DUPLICATE} or {@link #DEFERRED}
+     * @throws IOException if the row cannot be spilled
+     */
+    int add(CsvSource csvSource, int column, int fileIndex) throws IOException {
+        if (rowLog == null && csvSource instanceof MappedCsvSource && ((MappedCsvSource) csvSource).isSlice(column)) {
+            MappedCsvSource mappedSource = (MappedCsvSource) csvSource;
+            if (!seen.add(mappedSource.buffer(), mappedSource.fieldOffset(column), mappedSource.fieldLength(column))) {
+                return DUPLICATE;
+            }
+            checkBudget();
+            return UNIQUE;
+        }
+        return add(csvSource.get(column), fileIndex);
+    }
+
+    /**
+     * Spills the values of the row that {@link #add} just deferred.
+     *
+     * @param values Row values, written by {@link #finish} if the row survives
+     * @throws IOException if the row cannot be spilled
+     */
+    void defer(String[] values) throws IOException {
+        SpillFiles.writeRow(rowLog, values);
+        deferredRows++;
+    }
+
+    /**
+     * @return true once rows are being deferred to disk
+     */
+    boolean spilling() {
+        return rowLog != null;
+    }
+
+    /**
+     * @return Number of distinct emails written or, after {@link #finish}, to be written
+     */
+    int uniqueEmails() {
+        return (int) (seen.size() + deferredUnique);
+    }
+
+    /**
+     * Writes the first occurrence of every deferred email, in input order.
+     *
+     * @param output Output of the combined rows
+     * @param files Number of input files
+     * @return Number of deferred rows dropped as duplicates, per file index
+     * @throws IOException if the spill files cannot be read
+     */
+    int[] finish(CsvOutput output, int files) throws IOException {
+        int[] duplicates = new int[files];
+        if (rowLog == null) {
+            return duplicates;
+        }
+        rowLog.close();
+        for (DataOutputStream partition : partitions) {
+            partition.close();
+        }
+
+        List<Path> survivors = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            resolve(spillDirectory.resolve("partition-" + i), partitionRows[i], 0, survivors, duplicates);
+        }
+        replay(survivors, output);
+        return duplicates;
+    }
+
+    /**
+     * Deletes the spill files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (spillDirectory == null) {
+            return;
+        }
+        if (rowLog != null) {
+            rowLog.close();
+            for (DataOutputStream partition : partitions) {
+                partition.close();
+            }
+        }
+        SpillFiles.deleteDirectory(spillDirectory);
+        spillDirectory = null;
+    }
+
+    /**
+     * Starts spilling once the set has outgrown the budget, checked every
+     * {@link #BUDGET_CHECK_INTERVAL} new emails.
+     */
+    private void checkBudget() throws IOException {
+        if (budgetBytes > 0 && ++addsSinceCheck >= BUDGET_CHECK_INTERVAL) {
+            addsSinceCheck = 0;
+            if (seen.memoryBytes() > budgetBytes) {
+                startSpilling();
+            }
+        }
+    }
+
+    private void startSpilling() throws IOException {
+        spillDirectory = Files.createTempDirectory(spillParent, "combine-spill");
+        System.out.printf("Dedup set passed the memory budget at %,d emails (%s), deferring new emails to %s%n",
+            seen.size(), seen.memoryReport(), spillDirectory);
+
+        rowLog = SpillFiles.create(spillDirectory.resolve("rows"));
+        partitions = new DataOutputStream[PARTITIONS];
+        partitionRows = new long[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions[i] = SpillFiles.create(spillDirectory.resolve("partition-" + i));
+        }
+    }
+
+    /**
+     * Deduplicates one partition into a file of surviving sequence numbers, or splits it
+     * further when its emails do not fit into the budget.
+     */
+    private void resolve(Path partition, long rows, int level, List<Path> survivors, int[] duplicates)
+            throws IOException {
+        EmailSet emails = EmailSet.create(setKind, 0);
+        int[] partitionDuplicates = new int[duplicates.length];
+        boolean overBudget = false;
+        Path survivorFile = spillDirectory.resolve("survivors-" + nextSpillFile++);
+
+        try (DataInputStream in = SpillFiles.open(partition);
+             DataOutputStream out = SpillFiles.create(survivorFile)) {
+            for (long row = 0; row < rows; row++) {
+                long sequence = in.readLong();
+                int fileIndex = in.readInt();
+                String email = SpillFiles.readString(in);
+                if (!emails.add(email)) {
+                    partitionDuplicates[fileIndex]++;
+                    continue;
+                }
+                out.writeLong(sequence);
+                if (budgetBytes > 0 && level < MAX_LEVEL && emails.size() % BUDGET_CHECK_INTERVAL == 0
+                    && emails.memoryBytes() > budgetBytes) {
+                    overBudget = true;
+                    break;
+                }
+            }
+        }
+
+        if (overBudget) {
+            Files.delete(survivorFile);
+            split(partition, rows, level + 1, survivors, duplicates);
+            return;
+        }
+
+        Files.delete(partition);
+        for (int i = 0; i < duplicates.length; i++) {
+            duplicates[i] += partitionDuplicates[i];
+        }
+        deferredUnique += emails.size();
+        survivors.add(survivorFile);
+    }
+
+    private void split(Path partition, long rows, int level, List<Path> survivors, int[] duplicates)
+            throws IOException {
+        Path[] parts = new Path[PARTITIONS];
+        long[] partRows = new long[PARTITIONS];
+        DataOutputStream[] outs = new DataOutputStream[PARTITIONS];
+        try (DataInputStream in = SpillFiles.open(partition)) {
+            for (int i = 0; i < PARTITIONS; i++) {
+                parts[i] = spillDirectory.resolve("split-" + nextSpillFile++);
+                outs[i] = SpillFiles.create(parts[i]);
+            }
+            for (long row = 0; row < rows; row++) {
+                long sequence = in.readLong();
+                int fileIndex = in.readInt();
+                String email = SpillFiles.readString(in);
+                int part = partition(EmailNormalizer.fingerprint(email), level);
+                writeKey(outs[part], sequence, fileIndex, email);
+                partRows[part]++;
+            }
+        } finally {
+            for (DataOutputStream out : outs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+        Files.delete(partition);
+
+        for (int i = 0; i < PARTITIONS; i++) {
+            resolve(parts[i], partRows[i], level, survivors, duplicates);
+        }
+    }
+
+    /**
+     * Merges the surviving sequence numbers and prints the matching rows of the row log.
+     */
+    private void replay(List<Path> survivors, CsvOutput output) throws IOException {
+        PriorityQueue<SequenceReader> queue = new PriorityQueue<>(Comparator.comparingLong(r -> r.head));
+        try (DataInputStream rows = SpillFiles.open(spillDirectory.resolve("rows"))) {
+            for (Path survivorFile : survivors) {
+                SequenceReader reader = new SequenceReader(survivorFile);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            long sequence = 0;
+            while (!queue.isEmpty()) {
+                SequenceReader reader = queue.poll();
+                for (; sequence < reader.head; sequence++) {
+                    SpillFiles.skipRow(rows);
+                }
+                output.printRecord(SpillFiles.readRow(rows));
+                sequence++;
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (SequenceReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    private static int partition(long fingerprint, int level) {
+        return (int) (fingerprint >>> (Long.SIZE - PARTITION_BITS * (level + 1))) & (PARTITIONS - 1);
+    }
+
+    private static void writeKey(DataOutputStream out, long sequence, int fileIndex, String email)
+            throws IOException {
+        out.writeLong(sequence);
+        out.writeInt(fileIndex);
+        SpillFiles.writeString(out, email);
+    }
+
+    /**
+     * Reads one partition's surviving sequence numbers in ascending order.
+     */
+    private static final class SequenceReader implements Closeable {
+
+        private final DataInputStream in;
+        private long remaining;
+        long head;
+
+        SequenceReader(Path file) throws IOException {
+            this.remaining = Files.size(file) / Long.BYTES;
+            this.in = SpillFiles.open(file);
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            remaining--;
+            head = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Split-parse variant of the record loop in {@link Main#filterScrapedFile}, which scales one
+ * large scraped.csv across all cores instead of feeding every byte through a single reader.
+ *
+ * The file is cut into ranges of {@link #RANGE_SIZE} bytes and processed on a ForkJoinPool in
+ * two steps per range:
+ * - Summarize: each range is scanned by {@link CsvBoundaryScanner#summarize} for all four
+ *   possible quote states at its start, in parallel and without knowing the real state
+ * - Filter: walking the summaries in file order gives the real state at every range start and
+ *   with it the first record boundary in the range, even when a quoted Bio value carries line
+ *   breaks across the cut. The records between two boundaries are mapped and filtered as one
+ *   region by {@link ScrapedBlockFilter}
+ *
+ * The calling thread walks the summaries, submits the regions and writes their output in file
+ * order through a {@link ReorderBuffer} (or as they finish, when unordered). At most twice as
+ * many ranges as threads are summarized or filtered ahead of the writer, so a range is usually
+ * still in the page cache when it is read the second time and memory stays bounded however
+ * large the file is.
+ */
+final class SplitScrapedFilter {
+
+    static final int RANGE_SIZE = 64 << 20;
+
+    private final int threads;
+    private final ScrapedBlockFilter blockFilter;
+    private final boolean ordered;
+    private boolean headerPending;
+    private long regions;
+
+    /**
+     * @param threads Number of pool threads
+     * @param blockFilter Filter applied to every region
+     * @param ordered false to write the regions as they finish instead of in file order
+     */
+    SplitScrapedFilter(int threads, ScrapedBlockFilter blockFilter, boolean ordered) {
+        this.threads = threads;
+        this.blockFilter = blockFilter;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Filters every data record of the input file into the output.
+     *
+     * @param inputFile Scraped CSV file; its header record is skipped
+     * @param output Output, with the header already written
+     * @param counts Counters to add the filtered rows to
+     * @throws IOException if reading, parsing or writing fails
+     */
+    void filter(Path inputFile, CsvOutput output, Main.FilterCounts counts) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int window = threads * 2;
+        headerPending = true;
+        regions = 0;
+        ReorderBuffer<ScrapedBlockFilter.Batch> batches = new ReorderBuffer<>(window, ordered);
+
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int ranges = (int) ((fileSize + RANGE_SIZE - 1) / RANGE_SIZE);
+
+            List<Future<CsvBoundaryScanner.Summary>> summaries = new ArrayList<>(ranges);
+
+            int state = CsvBoundaryScanner.FIELD_START;
+            long regionStart = 0;
+            for (int i = 0; i < ranges; i++) {
+                // Keep the summaries a window ahead of the range being resolved
+                while (summaries.size() < Math.min(ranges, i + window)) {
+                    long start = (long) summaries.size() * RANGE_SIZE;
+                    long end = Math.min(start + RANGE_SIZE, fileSize);
+                    summaries.add(pool.submit(() -> CsvBoundaryScanner.summarize(
+                        channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start)));
+                }
+
+                CsvBoundaryScanner.Summary summary = await(summaries.get(i));
+                summaries.set(i, null);
+                if (i > 0) {
+                    // A range without a boundary lies inside one record, which continues
+                    long boundary = summary.firstBoundary[state];
+                    if (boundary >= 0) {
+                        submitRegion(pool, channel, batches, regionStart, boundary, output, counts);
+                        regionStart = boundary;
+                    }
+                }
+                state = summary.endState[state];
+            }
+            if (regionStart < fileSize) {
+                submitRegion(pool, channel, batches, regionStart, fileSize, output, counts);
+            }
+            batches.finish(regions);
+            ScrapedBlockFilter.Batch batch;
+            while ((batch = batches.take()) != null) {
+                write(batch, output, counts);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(ScrapedBlockFilter.Batch batch, CsvOutput output, Main.FilterCounts counts)
+            throws IOException {
+        output.write(batch.bytes);
+        counts.add(batch.counts);
+    }
+
+    private static CsvBoundaryScanner.Summary await(Future<CsvBoundaryScanner.Summary> summary)
+            throws IOException {
+        try {
+            return summary.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning for record boundaries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to scan for record boundaries", e.getCause());
+        }
+    }
+
+    /**
+     * Maps the records between two boundaries and submits them for filtering, after writing
+     * finished regions until the new one fits into the reorder window.
+     */
+    private void submitRegion(ForkJoinPool pool, FileChannel channel, ReorderBuffer<ScrapedBlockFilter.Batch> batches,
+                              long start, long end, CsvOutput output, Main.FilterCounts counts) throws IOException {
+        long sequence = regions++;
+        while (!batches.admits(sequence)) {
+            write(batches.take(), output, counts);
+        }
+
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("CSV record at byte " + start + " is larger than "
+                + Integer.MAX_VALUE + " bytes");
+        }
+        ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        boolean skipHeader = headerPending;
+        headerPending = headerPending && !CsvBoundaryScanner.containsRecord(region);
+        pool.execute(() -> blockFilter.filterInto(batches, sequence, region, start, skipHeader));
+    }
+}
@@ -0,0 +1,103 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer / single-consumer ring buffer.
+ *
+ * Exactly one thread may {@link #put} and {@link #close}, and exactly one other thread may
+ * {@link #take}. Each side only writes its own position, published with a release store, so
+ * neither side takes a lock or retries a CAS. A side that finds the ring full or empty spins
+ * briefly, then yields, then parks for short intervals (see {@link #idle}).
+ *
+ * @param <E> Element type
+ */
+final class SpscRing<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+    /** Next position to take, only written by the consumer. */
+    private final AtomicLong head = new AtomicLong();
+    /** Next position to put, only written by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param capacity Number of elements the ring holds, a power of 2
+     */
+    SpscRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of 2: " + capacity);
+        }
+        buffer = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Appends an element, waiting while the ring is full. Producer only.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(E element) throws InterruptedException {
+        long position = tail.get();
+        for (int attempt = 0; position - head.get() == buffer.length; attempt++) {
+            idle(attempt);
+        }
+        buffer[(int) position & mask] = element;
+        tail.lazySet(position + 1);
+    }
+
+    /**
+     * Marks the end of the elements. Producer only, after its last {@link #put}.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Removes the oldest element, waiting while the ring is empty. Consumer only.
+     *
+     * @return The element, or null once the ring is closed and drained
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    E take() throws InterruptedException {
+        long position = head.get();
+        for (int attempt = 0; position == tail.get(); attempt++) {
+            if (closed) {
+                // close() follows the last put, so the tail read after it is final
+                if (position == tail.get()) {
+                    return null;
+                }
+                break;
+            }
+            idle(attempt);
+        }
+        int index = (int) position & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Backs off while waiting for another thread: spins first, as the other side is usually
+     * only a few elements away, then yields, then parks for 50 microseconds at a time.
+     *
+     * @param attempt Number of earlier unsuccessful checks in this wait
+     * @throws InterruptedException if the thread was interrupted
+     */
+    static void idle(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < 100) {
+            Thread.onSpinWait();
+        } else if (attempt < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * {@link CsvOutput} that encodes values as UTF-8 straight into one large reusable byte array
+ * and writes it to the channel in blocks of {@link #BUFFER_SIZE} bytes, without the Writer,
+ * encoder and per-value String handling of a CSVPrinter.
+ *
+ * A value is encoded first and then checked for quoting in one branch-free scan over its bytes,
+ * which the JIT can vectorize. Only values that need quoting are rewritten in place with the
+ * surrounding quotes and doubled inner quotes. The rules are those of CSVFormat.DEFAULT with
+ * QuoteMode.MINIMAL, so the output is byte for byte what {@link CommonsCsvOutput} writes:
+ * - an empty value is quoted only as the first of its record, a null value never
+ * - a value is quoted if its first character is '#' or below, its last character is a space
+ *   or below, or it contains a comma, quote, CR or LF
+ * - records end with CRLF
+ * Unpaired surrogates are written as '?', like the JDK encoder does.
+ *
+ * Values of a {@link MappedCsvSource} are copied as byte slices without decoding them into
+ * Strings, unless they hold escaped quotes or non-ASCII bytes: those are decoded and encoded
+ * again, so malformed input is replaced the same way as in the String path.
+ *
+ * Without a channel the writer is an in-memory buffer that grows as needed.
+ */
+final class Utf8CsvWriter implements CsvOutput {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final int INITIAL_MEMORY_SIZE = 1 << 16;
+    // Flags returned by scan()
+    private static final int SPECIAL = 1;
+    private static final int NON_ASCII = 0x80;
+
+    private final WritableByteChannel channel;
+    private byte[] buffer;
+    private int count;
+    private boolean newRecord = true;
+
+    /**
+     * @param channel Output channel, or null for an in-memory output
+     */
+    Utf8CsvWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = new byte[channel != null ? BUFFER_SIZE : INITIAL_MEMORY_SIZE];
+    }
+
+    @Override
+    public void print(CharSequence value) throws IOException {
+        if (value == null) {
+            // Like CSVPrinter: nothing, not even the quotes of an empty first value
+            ensure(1);
+            startField();
+            newRecord = false;
+            return;
+        }
+        int length = value.length();
+        // Delimiter, up to 3 bytes per char, and the surrounding quotes
+        ensure(3 * length + 3);
+        startField();
+        int start = count;
+        encode(value, length);
+        endField(start, scan(start, count));
+    }
+
+    @Override
+    public void print(CsvSource source, int index) throws IOException {
+        if (!(source instanceof MappedCsvSource)) {
+            print(source.get(index));
+            return;
+        }
+        MappedCsvSource mapped = (MappedCsvSource) source;
+        if (index >= mapped.size() || mapped.fieldEscaped(index)) {
+            print(mapped.get(index));
+            return;
+        }
+
+        int length = mapped.fieldLength(index);
+        // Delimiter, the slice with every byte doubled at worst, and the surrounding quotes
+        ensure(2 * length + 3);
+        int mark = count;
+        startField();
+        int start = count;
+        mapped.buffer().get(mapped.fieldOffset(index), buffer, start, length);
+        count = start + length;
+        int flags = scan(start, count);
+        if ((flags & NON_ASCII) != 0) {
+            count = mark;
+            print(mapped.get(index));
+            return;
+        }
+        endField(start, flags);
+    }
+
+    @Override
+    public void println() throws IOException {
+        ensure(2);
+        buffer[count++] = '\r';
+        buffer[count++] = '\n';
+        newRecord = true;
+    }
+
+    @Override
+    public void write(ByteBuffer formatted) throws IOException {
+        if (channel == null) {
+            ensure(formatted.remaining());
+            int length = formatted.remaining();
+            formatted.get(buffer, count, length);
+            count += length;
+            return;
+        }
+        drain();
+        while (formatted.hasRemaining()) {
+            channel.write(formatted);
+        }
+    }
+
+    @Override
+    public ByteBuffer bytes() {
+        if (channel != null) {
+            throw new UnsupportedOperationException("Not an in-memory output");
+        }
+        return ByteBuffer.wrap(buffer, 0, count);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (channel != null) {
+            drain();
+        }
+    }
+
+    /**
+     * Checks the bytes of a value in one pass without early exit.
+     *
+     * @return {@link #SPECIAL} if it contains a comma, quote, CR or LF, plus {@link #NON_ASCII}
+     *         if it contains bytes above 0x7F
+     */
+    private int scan(int from, int to) {
+        byte[] bytes = buffer;
+        boolean special = false;
+        int high = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            special |= (b == ',') | (b == '"') | (b == '\r') | (b == '\n');
+            high |= b;
+        }
+        return (high & NON_ASCII) | (special ? SPECIAL : 0);
+    }
+
+    private void startField() {
+        if (!newRecord) {
+            buffer[count++] = ',';
+        }
+    }
+
+    /**
+     * Quotes the value encoded at [start, count) if needed. Room for the quotes is ensured by
+     * the caller.
+     */
+    private void endField(int start, int flags) {
+        int end = count;
+        if (start == end) {
+            // An empty first value could be mistaken for an empty line
+            if (newRecord) {
+                buffer[count++] = '"';
+                buffer[count++] = '"';
+            }
+        } else if ((flags & SPECIAL) != 0 || (buffer[start] & 0xFF) <= '#' || (buffer[end - 1] & 0xFF) <= ' ') {
+            quote(start, end);
+        }
+        newRecord = false;
+    }
+
+    /**
+     * Rewrites the value at [start, end) in place with surrounding quotes and doubled inner
+     * quotes, from the back so every byte moves once.
+     */
+    private void quote(int start, int end) {
+        byte[] bytes = buffer;
+        int quotes = 0;
+        for (int i = start; i < end; i++) {
+            quotes += bytes[i] == '"' ? 1 : 0;
+        }
+        int target = end + quotes + 2;
+        count = target;
+        bytes[--target] = '"';
+        for (int i = end - 1; i >= start; i--) {
+            byte b = bytes[i];
+            bytes[--target] = b;
+            if (b == '"') {
+                bytes[--target] = '"';
+            }
+        }
+        bytes[--target] = '"';
+    }
+
+    /**
+     * Encodes chars as UTF-8 at {@link #count}. Room for 3 bytes per char is ensured by the
+     * caller; a surrogate pair takes 4 bytes for its 2 chars.
+     */
+    private void encode(CharSequence value, int length) {
+        byte[] bytes = buffer;
+        int position = count;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | c >> 6);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                bytes[position++] = (byte) (0xE0 | c >> 12);
+                bytes[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                bytes[position++] = '?';
+            }
+        }
+        count = position;
+    }
+
+    /**
+     * Makes room for the given number of bytes: writes the buffer to the channel, and grows it
+     * if that is not enough or there is no channel.
+     */
+    private void ensure(int length) throws IOException {
+        if (length <= buffer.length - count) {
+            return;
+        }
+        if (channel != null) {
+            drain();
+        }
+        if (length > buffer.length - count) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max((long) count + length, 2L * buffer.length)));
+        }
+    }
+
+    private void drain() throws IOException {
+        ByteBuffer pending = ByteBuffer.wrap(buffer, 0, count);
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        count = 0;
+    }
+}
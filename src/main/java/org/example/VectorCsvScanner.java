@@ -0,0 +1,179 @@
+package org.example;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link CsvScanner} that classifies 64 bytes at a time with the Vector API, in the style of
+ * simdjson.
+ *
+ * The input is cut into 64-byte blocks aligned to the start of the buffer. For each block the
+ * bytes are compared against the quote and against the delimiter, CR and LF with SIMD
+ * compares (two 32-byte or one 64-byte vector per block, whatever the CPU prefers), giving one
+ * 64-bit mask per class with a bit per byte. Queries are then answered with bit operations:
+ * - the end of an unquoted value is the lowest structural bit at or after its start
+ * - the closing quote of a quoted value is found with a quote parity mask: the prefix XOR of
+ *   the quote bits marks every byte after an odd number of quotes, carried over from block to
+ *   block. The closing quote is the first quote with odd parity that is not followed by
+ *   another quote; quotes before it come in doubled pairs.
+ *
+ * The masks of the last block are kept, so the short values of a record that fall into the
+ * same block cost one classification together. Only used when {@link #isSupported()}; see
+ * {@link CsvScanner} for how it is loaded.
+ */
+final class VectorCsvScanner implements CsvScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int BLOCK = Long.SIZE;
+    // Position of the 8 mask bits of each long lane in the gathered mask
+    private static final LongVector LANE_SHIFTS = LongVector.zero(LongVector.SPECIES_PREFERRED)
+        .addIndex(8);
+
+    private final byte[] block = new byte[BLOCK];
+    private ByteBuffer blockBuffer;
+    private int blockStart = -1;
+    private int blockLength;
+    private long quoteBits;
+    private long structuralBits;
+    private boolean quotesClassified;
+    private boolean structuralsClassified;
+
+    /**
+     * @return true if the CPU has vectors of 16 to 64 bytes
+     */
+    static boolean isSupported() {
+        return SPECIES.length() >= 16 && SPECIES.length() <= BLOCK;
+    }
+
+    @Override
+    public int delimiterOrLineBreak(ByteBuffer buffer, int from, int limit) {
+        int start = from & -BLOCK;
+        while (start < limit) {
+            long bits = structuralBits(buffer, start, limit) & (-1L << (from - start));
+            if (bits != 0) {
+                return start + Long.numberOfTrailingZeros(bits);
+            }
+            start += BLOCK;
+            from = start;
+        }
+        return limit;
+    }
+
+    @Override
+    public int closingQuote(ByteBuffer buffer, int from, int limit) {
+        int start = from & -BLOCK;
+        int escaped = 0;
+        // All ones while an odd number of quotes has been seen in earlier blocks
+        long parity = 0;
+        while (start < limit) {
+            long quotes = quoteBits(buffer, start, limit) & (-1L << (from - start));
+            if (quotes != 0) {
+                long odd = prefixXor(quotes) ^ parity;
+                long followedByQuote = quotes >>> 1;
+                if (start + BLOCK < limit && buffer.get(start + BLOCK) == QUOTE) {
+                    followedByQuote |= Long.MIN_VALUE;
+                }
+                long closing = quotes & odd & ~followedByQuote;
+                if (closing != 0) {
+                    long before = quotes & (Long.lowestOneBit(closing) - 1);
+                    return start + Long.numberOfTrailingZeros(closing) | (before != 0 ? ESCAPED : escaped);
+                }
+                escaped = ESCAPED;
+                parity = odd >> (Long.SIZE - 1);
+            }
+            start += BLOCK;
+            from = start;
+        }
+        return limit | escaped;
+    }
+
+    /**
+     * @return Mask of the delimiters, CRs and LFs in the block at start
+     */
+    private long structuralBits(ByteBuffer buffer, int start, int limit) {
+        load(buffer, start, limit);
+        if (!structuralsClassified) {
+            long structurals = 0;
+            for (int i = 0; i < BLOCK; i += SPECIES.length()) {
+                ByteVector bytes = ByteVector.fromArray(SPECIES, block, i);
+                structurals |= bits(bytes.eq(DELIMITER).or(bytes.eq(LF)).or(bytes.eq(CR))) << i;
+            }
+            structuralBits = structurals;
+            structuralsClassified = true;
+        }
+        return structuralBits;
+    }
+
+    /**
+     * @return Mask of the quotes in the block at start
+     */
+    private long quoteBits(ByteBuffer buffer, int start, int limit) {
+        load(buffer, start, limit);
+        if (!quotesClassified) {
+            long quotes = 0;
+            for (int i = 0; i < BLOCK; i += SPECIES.length()) {
+                quotes |= bits(ByteVector.fromArray(SPECIES, block, i).eq(QUOTE)) << i;
+            }
+            quoteBits = quotes;
+            quotesClassified = true;
+        }
+        return quoteBits;
+    }
+
+    /**
+     * Copies the block at start, unless it is the current one. Each mask is computed the first
+     * time it is needed, as records without quoted values never need the quote mask. Bytes
+     * past limit are zeros, which match nothing.
+     */
+    private void load(ByteBuffer buffer, int start, int limit) {
+        int length = Math.min(BLOCK, limit - start);
+        if (start == blockStart && length == blockLength && buffer == blockBuffer) {
+            return;
+        }
+        buffer.get(start, block, 0, length);
+        if (length < BLOCK) {
+            Arrays.fill(block, length, BLOCK, (byte) 0);
+        }
+        blockBuffer = buffer;
+        blockStart = start;
+        blockLength = length;
+        quotesClassified = false;
+        structuralsClassified = false;
+    }
+
+    /**
+     * Gathers a mask into a long with one bit per lane, like VectorMask.toLong() but with
+     * operations the JIT compiles to SIMD instructions on every JDK since 16: a multiply moves
+     * the lane flags of every 8 bytes into one byte, and the bytes are combined by a reduction.
+     */
+    private static long bits(VectorMask<Byte> mask) {
+        if (!mask.anyTrue()) {
+            return 0;
+        }
+        return mask.toVector().reinterpretAsLongs()
+            .and(0x0101010101010101L)
+            .mul(0x0102040810204080L)
+            .lanewise(VectorOperators.LSHR, 56)
+            .lanewise(VectorOperators.LSHL, LANE_SHIFTS)
+            .reduceLanes(VectorOperators.OR);
+    }
+
+    /**
+     * @return Mask with bit i set if an odd number of bits at or below i are set in bits
+     */
+    private static long prefixXor(long bits) {
+        bits ^= bits << 1;
+        bits ^= bits << 2;
+        bits ^= bits << 4;
+        bits ^= bits << 8;
+        bits ^= bits << 16;
+        bits ^= bits << 32;
+        return bits;
+    }
+}
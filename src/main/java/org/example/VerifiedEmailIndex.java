@@ -0,0 +1,252 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-only {@link EmailLookup} over a persistent, memory-mapped index of the verified emails.
+ *
+ * The index file holds the open-addressing fingerprint table of an {@link EmailFingerprintSet}
+ * behind a small header that records the size, modification time and a content hash of the
+ * checked.csv it was built from:
+ * - Offset 0: magic "VEMIDX01", format version
+ * - Offset 16: source size, source mtime (millis), source content hash
+ * - Offset 40: number of emails, number of table slots
+ * - Offset 64: table slots, little-endian longs (0 = empty)
+ *
+ * Opening an index is a header check plus an mmap, so startup no longer depends on the size of
+ * checked.csv. The file is mapped read-only, which lets several JVMs on the same machine share
+ * its pages in the OS page cache. New indexes are written to a temporary file and atomically
+ * renamed into place, so concurrent runs never see a half-written index.
+ */
+final class VerifiedEmailIndex implements EmailLookup {
+
+    private static final long MAGIC = 0x31305844494d4556L; // "VEMIDX01" little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+    private static final int HASH_SAMPLE_BYTES = 1 << 20;
+
+    private final LongBuffer[] segments;
+    private final long mask;
+    private final int size;
+    private final long slotCount;
+
+    private VerifiedEmailIndex(LongBuffer[] segments, long slotCount, int size) {
+        this.segments = segments;
+        this.slotCount = slotCount;
+        this.mask = slotCount - 1;
+        this.size = size;
+    }
+
+    /**
+     * Opens an existing index if it was built from the current content of the source file.
+     *
+     * @param indexFile Index file location
+     * @param sourceFile The checked.csv the index must describe
+     * @return Mapped index, or null if the index is missing, unreadable or stale
+     * @throws IOException if the source file cannot be read
+     */
+    static VerifiedEmailIndex open(Path indexFile, Path sourceFile) throws IOException {
+        long[] stamp = sourceStamp(sourceFile);
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION
+                || header.getLong(16) != stamp[0] || header.getLong(24) != stamp[1]
+                || header.getLong(32) != stamp[2]) {
+                return null;
+            }
+
+            long entries = header.getLong(40);
+            long slots = header.getLong(48);
+            if (Long.bitCount(slots) != 1 || channel.size() != HEADER_SIZE + slots * Long.BYTES) {
+                return null;
+            }
+
+            // The mapping stays valid after the channel is closed
+            int segmentCount = (int) ((slots + SEGMENT_SLOTS - 1) >>> SEGMENT_SHIFT);
+            LongBuffer[] segments = new LongBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long count = Math.min(SEGMENT_SLOTS, slots - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * Long.BYTES, count * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asLongBuffer();
+            }
+            return new VerifiedEmailIndex(segments, slots, (int) entries);
+        }
+    }
+
+    /**
+     * Writes the fingerprint table of a freshly loaded set as the index of the source file.
+     *
+     * The stamp must be taken with {@link #sourceStamp} before the set is loaded. If the file
+     * changes during the load, the index then describes the old content and is rejected by
+     * {@link #open}, instead of carrying the new file's stamp over the old emails.
+     *
+     * @param indexFile Index file location, replaced atomically
+     * @param sourceFile The checked.csv the set was loaded from
+     * @param stamp Stamp of the source file taken before loading the set
+     * @param emails Fingerprint set holding every verified email of the source file
+     * @throws IOException if the index cannot be written
+     */
+    static void write(Path indexFile, Path sourceFile, long[] stamp, EmailFingerprintSet emails)
+            throws IOException {
+        long[] table = emails.table();
+
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(0, MAGIC).putInt(8, VERSION)
+                    .putLong(16, stamp[0]).putLong(24, stamp[1]).putLong(32, stamp[2])
+                    .putLong(40, emails.size()).putLong(48, table.length);
+                writeFully(channel, header);
+
+                ByteBuffer block = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                for (long fingerprint : table) {
+                    if (!block.hasRemaining()) {
+                        block.flip();
+                        writeFully(channel, block);
+                        block.clear();
+                    }
+                    block.putLong(fingerprint);
+                }
+                block.flip();
+                writeFully(channel, block);
+                channel.force(true);
+            }
+            try {
+                // Temporary files are owner-only; the index should be as readable as the source
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(sourceFile));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, keep the default permissions
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public boolean contains(CharSequence email) {
+        return contains(EmailNormalizer.fingerprint(email));
+    }
+
+    @Override
+    public boolean contains(ByteBuffer buffer, int offset, int length) {
+        return contains(EmailNormalizer.fingerprint(buffer, offset, length));
+    }
+
+    private boolean contains(long fingerprint) {
+        long slot = fingerprint & mask;
+
+        while (true) {
+            long current = segments[(int) (slot >>> SEGMENT_SHIFT)].get((int) (slot & (SEGMENT_SLOTS - 1)));
+            if (current == 0) {
+                return false;
+            }
+            if (current == fingerprint) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        // Page cache, shared with every other process mapping the same index
+        return slotCount * Long.BYTES;
+    }
+
+    /**
+     * Streams every fingerprint in the index, e.g. to build a Bloom filter.
+     *
+     * @param consumer Receives each stored fingerprint once
+     */
+    void forEachFingerprint(LongConsumer consumer) {
+        for (LongBuffer segment : segments) {
+            for (int i = 0, limit = segment.limit(); i < limit; i++) {
+                long fingerprint = segment.get(i);
+                if (fingerprint != 0) {
+                    consumer.accept(fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies the content of the source file: its size, modification time and a hash of
+     * its first and last megabyte. Hashing only those samples keeps the check cheap on large
+     * lists while still catching edits that preserve size and mtime.
+     *
+     * @param sourceFile The checked.csv to identify
+     * @return Size, modification time and content hash
+     * @throws IOException if the file cannot be read
+     */
+    static long[] sourceStamp(Path sourceFile) throws IOException {
+        long size = Files.size(sourceFile);
+        long modified = Files.getLastModifiedTime(sourceFile).toMillis();
+
+        long hash = 0xcbf29ce484222325L;
+        try (FileChannel channel = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+            ByteBuffer sample = ByteBuffer.allocate(HASH_SAMPLE_BYTES);
+            hash = hashRange(channel, 0, sample, hash);
+            if (size > HASH_SAMPLE_BYTES) {
+                hash = hashRange(channel, Math.max(HASH_SAMPLE_BYTES, size - HASH_SAMPLE_BYTES), sample, hash);
+            }
+        }
+        return new long[] {size, modified, EmailFingerprintSet.finish(hash ^ size)};
+    }
+
+    private static long hashRange(FileChannel channel, long position, ByteBuffer sample, long hash)
+            throws IOException {
+        sample.clear();
+        while (sample.hasRemaining()) {
+            int read = channel.read(sample, position + sample.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        sample.flip();
+        while (sample.hasRemaining()) {
+            hash ^= sample.get();
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
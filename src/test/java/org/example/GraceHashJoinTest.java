@@ -0,0 +1,117 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that {@link GraceHashJoin} writes the rows of the in-memory filter, in scraped.csv
+ * order, also when its partitions have to be split again.
+ *
+ * With budgets of a few hundred KB the fan-out is 2 or 4 and a partition set is checked after
+ * 4096 emails, so tens of thousands of verified emails are split over several levels.
+ */
+class GraceHashJoinTest {
+
+    private static final int[] PROJECTION = {2, 0};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void joinMatchesInMemoryFilter() throws IOException {
+        assertSameAsInMemory(64 << 20, 2_000, 3_000, 1);
+    }
+
+    @Test
+    void oversizedPartitionsAreSplitAgain() throws IOException {
+        assertSameAsInMemory(256 << 10, 40_000, 60_000, 2);
+        assertSameAsInMemory(1 << 20, 80_000, 40_000, 3);
+    }
+
+    private void assertSameAsInMemory(long budgetBytes, int checkedRows, int scrapedRows, long seed)
+        throws IOException {
+        Random random = new Random(seed);
+        Set<String> verified = new HashSet<>();
+        StringBuilder checked = new StringBuilder("Email,ELV Result\n");
+        for (int i = 0; i < checkedRows; i++) {
+            String email = email(random, checkedRows * 2);
+            checked.append("x,").append(email).append('\n');
+            verified.add(email.trim().toLowerCase(Locale.ROOT));
+        }
+        Path checkedFile = write("checked.csv", checked.toString());
+
+        CsvOutput expected = CsvOutput.openBuffer();
+        int expectedRows = 0;
+        StringBuilder scraped = new StringBuilder("name,email,company\n");
+        for (int i = 0; i < scrapedRows; i++) {
+            String email = random.nextInt(20) == 0 ? " " : email(random, checkedRows * 2);
+            boolean quoted = random.nextBoolean();
+            String company = quoted ? "Café, \"" + i + "\"" : "Acme " + i;
+            scraped.append("user").append(i).append(',').append(email).append(',')
+                .append(quoted ? "\"Café, \"\"" + i + "\"\"\"" : company).append('\n');
+            if (verified.contains(email.trim().toLowerCase(Locale.ROOT))) {
+                expected.printRecord(company, "user" + i);
+                expectedRows++;
+            }
+        }
+        Path scrapedFile = write("scraped.csv", scraped.toString());
+        String expectedText = text(expected);
+
+        for (String tokenizer : new String[] {"commons", "mapped"}) {
+            Path spillParent = Files.createDirectory(directory.resolve("spill-" + tokenizer + "-" + seed));
+            GraceHashJoin join = new GraceHashJoin(checkedFile, budgetBytes, spillParent);
+            CsvOutput output = CsvOutput.openBuffer();
+            Main.FilterCounts counts = new Main.FilterCounts();
+            try (CsvSource source = tokenizer.equals("mapped")
+                ? new MappedCsvSource(scrapedFile) : new CommonsCsvSource(scrapedFile)) {
+                join.filter(source, output, 1, PROJECTION, counts);
+            }
+
+            assertEquals(expectedText, text(output), tokenizer);
+            assertEquals(scrapedRows, counts.totalRows, tokenizer);
+            assertEquals(expectedRows, counts.filteredRows, tokenizer);
+            try (Stream<Path> files = Files.list(spillParent)) {
+                assertFalse(files.findAny().isPresent(), "spill files left behind");
+            }
+        }
+    }
+
+    /**
+     * An email of a pool of the given size, in varying case and padding.
+     */
+    private static String email(Random random, int pool) {
+        String email = "user" + random.nextInt(pool) + "@example.com";
+        switch (random.nextInt(3)) {
+            case 0:
+                return email.toUpperCase(Locale.ROOT);
+            case 1:
+                return " " + email + " ";
+            default:
+                return email;
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String text(CsvOutput output) throws IOException {
+        output.flush();
+        return StandardCharsets.UTF_8.decode(output.bytes()).toString();
+    }
+}
@@ -0,0 +1,237 @@
+package org.example;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Differential test of {@link MappedCsvSource} against Commons CSV's CSVParser with the format
+ * the tools read their input with ({@link CommonsCsvSource#inputFormat()}).
+ *
+ * Every input is also read with tiny mapped windows, from one byte up, so records cross window
+ * edges at each of their bytes and the remap paths run: a CRLF or a doubled quote split by the
+ * window end, a trailing delimiter at the end of a window and windows that grow for a record.
+ * Besides the values, the raw bytes of each record (as {@link RawRecordWriter} copies them) must
+ * not depend on the window size.
+ */
+class MappedCsvSourceTest {
+
+    private static final int MAX_TESTED_WINDOW = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void trailingDelimiter() throws IOException {
+        assertSameRecords("email,name\na@x.com,\nb@x.com,Bob,\nc@x.com,");
+        assertSameRecords("email,name\r\na@x.com,Ann,\r\n");
+    }
+
+    @Test
+    void lineBreaks() throws IOException {
+        assertSameRecords("email,name\r\na@x.com,Ann\r\n\r\n\r\nb@x.com,Bob\r\n");
+        assertSameRecords("email,name\ra@x.com,Ann\r\rb@x.com,Bob\r");
+        assertSameRecords("email,name\n\na@x.com,Ann\nb@x.com,Bob");
+    }
+
+    @Test
+    void doubledQuotes() throws IOException {
+        assertSameRecords("email,bio\n\"a@x.com\",\"say \"\"hi\"\"\"\n\"b@x.com\",\"\"\"\"\"\"\n\"\",\"\"\"\"\n");
+        assertSameRecords("email,bio\r\n\"a\"\"b@x.com\",\"\"\"\"\r\n");
+    }
+
+    @Test
+    void quotedDelimitersAndLineBreaks() throws IOException {
+        assertSameRecords("email,bio\n\"a@x.com\",\"first line\r\nsecond, line\"\n\"b@x.com\" ,\" padded \"\n");
+    }
+
+    @Test
+    void trimmedValues() throws IOException {
+        assertSameRecords(" email , name \n  A@x.com\t,  Ann  \n\t,\t\nb@x.com, élève ✓ \n");
+    }
+
+    @Test
+    void randomRecords() throws IOException {
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            assertSameRecords(randomCsv(random, 60));
+        }
+    }
+
+    @Test
+    void unterminatedQuoteFails() throws IOException {
+        Path file = write("email,bio\na@x.com,\"open\n");
+        for (int window = 1; window <= MAX_TESTED_WINDOW; window++) {
+            int windowSize = window;
+            IOException e = assertThrows(IOException.class, () -> readMapped(file, windowSize));
+            assertTrue(e.getMessage().startsWith("EOF reached before encapsulated token finished"), e.getMessage());
+        }
+    }
+
+    @Test
+    void textAfterClosingQuoteFails() throws IOException {
+        Path file = write("email,bio\n\"a@x.com\"x,bio\n");
+        assertThrows(IOException.class, () -> readMapped(file, MappedCsvSource.WINDOW_SIZE));
+    }
+
+    @Test
+    void malformedUtf8Fails() throws IOException {
+        // A truncated two-byte sequence, plain and inside a quoted value with doubled quotes
+        for (String value : new String[] {"b\u00C3(@x.com", "\"b\"\"\u00C3(\""}) {
+            byte[] bytes = ("email,name\na@x.com,Ann\n" + value + ",Bob\n").getBytes(StandardCharsets.ISO_8859_1);
+            Path file = Files.createTempFile(directory, "malformed", ".csv");
+            Files.write(file, bytes);
+
+            assertThrows(MalformedInputException.class, () -> {
+                try (CsvSource source = new CommonsCsvSource(file)) {
+                    while (source.nextRecord()) {
+                        source.get(0);
+                    }
+                }
+            });
+            UncheckedIOException e = assertThrows(UncheckedIOException.class,
+                () -> readMapped(file, MappedCsvSource.WINDOW_SIZE));
+            assertTrue(e.getCause() instanceof MalformedInputException, String.valueOf(e.getCause()));
+            // The value starts after the two earlier lines and its opening quote, if any
+            int valueStart = 23 + (value.startsWith("\"") ? 1 : 0);
+            assertTrue(e.getMessage().endsWith("at byte " + valueStart), e.getMessage());
+        }
+
+        // An encoded U+FFFD is valid input and reads back unchanged
+        assertSameRecords("email,name\na@x.com,\uFFFD\n");
+    }
+
+    /**
+     * Reads the content with CSVParser and with the mapped source at every tested window size,
+     * and compares header names, record sizes and values.
+     */
+    private void assertSameRecords(String content) throws IOException {
+        List<List<String>> expected = readCommons(content);
+        Path file = write(content);
+        assertEquals(expected, readMapped(file, MappedCsvSource.WINDOW_SIZE));
+        List<String> expectedRaw = readRaw(file, MappedCsvSource.WINDOW_SIZE);
+        int maxWindow = Math.min(MAX_TESTED_WINDOW, content.length() + 1);
+        for (int window = 1; window <= maxWindow; window++) {
+            assertEquals(expected, readMapped(file, window), "window of " + window + " bytes");
+            assertEquals(expectedRaw, readRaw(file, window), "raw records, window of " + window + " bytes");
+        }
+    }
+
+    /**
+     * @return Header names followed by the values of every record
+     */
+    private static List<List<String>> readCommons(String content) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (Reader reader = new StringReader(content);
+             CSVParser parser = new CSVParser(reader, CommonsCsvSource.inputFormat())) {
+            records.add(new ArrayList<>(parser.getHeaderNames()));
+            for (CSVRecord record : parser) {
+                List<String> values = new ArrayList<>();
+                record.forEach(values::add);
+                records.add(values);
+            }
+        }
+        return records;
+    }
+
+    private static List<List<String>> readMapped(Path file, int windowSize) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (MappedCsvSource source = new MappedCsvSource(file, windowSize)) {
+            records.add(new ArrayList<>(source.getHeaderNames()));
+            while (source.nextRecord()) {
+                List<String> values = new ArrayList<>();
+                for (int i = 0; i < source.size(); i++) {
+                    values.add(source.get(i));
+                }
+                records.add(values);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return Bytes of every data record from its first field to the end of its line break
+     */
+    private static List<String> readRaw(Path file, int windowSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (MappedCsvSource source = new MappedCsvSource(file, windowSize)) {
+            while (source.nextRecord()) {
+                byte[] raw = new byte[source.recordEnd() - source.rawStart(0)];
+                source.buffer().get(source.rawStart(0), raw);
+                records.add(new String(raw, StandardCharsets.UTF_8));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Builds a file with a header and rows of 1 to 4 values mixing plain, padded, empty, quoted
+     * and non-ASCII values, LF and CRLF line breaks, empty lines and an optional final break.
+     */
+    private static String randomCsv(Random random, int rows) {
+        StringBuilder csv = new StringBuilder("email,name,bio,company\r\n");
+        for (int row = 0; row < rows; row++) {
+            int values = 1 + random.nextInt(4);
+            for (int i = 0; i < values; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                csv.append(randomValue(random));
+            }
+            if (row < rows - 1 || random.nextBoolean()) {
+                csv.append(random.nextBoolean() ? "\r\n" : "\n");
+                if (random.nextInt(10) == 0) {
+                    csv.append(random.nextBoolean() ? "\r\n" : "\n");
+                }
+            }
+        }
+        return csv.toString();
+    }
+
+    private static String randomValue(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return "";
+            case 1:
+                return " user" + random.nextInt(100) + "@Example.com\t";
+            case 2:
+                return "\"" + randomQuotedText(random) + "\"";
+            case 3:
+                return "Jürgen Åström 😀";
+            default:
+                return "value" + random.nextInt(1000);
+        }
+    }
+
+    private static String randomQuotedText(Random random) {
+        String[] parts = {"a", " ", ",", "\"\"", "\r\n", "\n", "é", "word"};
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(8); i > 0; i--) {
+            text.append(parts[random.nextInt(parts.length)]);
+        }
+        return text.toString();
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(directory, "input", ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
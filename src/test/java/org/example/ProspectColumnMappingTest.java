@@ -0,0 +1,70 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks when {@link ProspectColumnMapping} reports a file's headers as different, and which
+ * column the email of a record is taken from.
+ */
+class ProspectColumnMappingTest {
+
+    private static final List<String> UNION = List.of("first_name", "email", "personal_email", "company");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void firstFileHeadersReportAnyDifference() throws IOException {
+        List<String> first = List.of("first_name", "email");
+        assertFalse(map(first, "first_name,email\n").differs(false));
+        assertTrue(map(first, "email,first_name\n").differs(false));
+        assertTrue(map(first, "first_name,email,company\n").differs(false));
+    }
+
+    @Test
+    void unionHeadersOnlyReportMissingEmailOrUnknownColumns() throws IOException {
+        assertFalse(map(UNION, "first_name,email\n").differs(true));
+        assertFalse(map(UNION, "personal_email,company\n").differs(true));
+        assertTrue(map(UNION, "first_name,company\n").differs(true));
+        assertTrue(map(UNION, "email,title\n").differs(true));
+    }
+
+    @Test
+    void emailFallsBackToPersonalEmail() throws IOException {
+        Path file = write("email,personal_email\nann@example.com,ann@home.org\n  ,bob@home.org\n,\n");
+        for (String tokenizer : new String[] {"commons", "mapped"}) {
+            try (CsvSource source = tokenizer.equals("mapped") ? new MappedCsvSource(file) : new CommonsCsvSource(file)) {
+                ProspectColumnMapping mapping = ProspectColumnMapping.map(UNION, source);
+                assertTrue(source.nextRecord());
+                assertEquals(0, mapping.emailSource(source), tokenizer);
+                assertTrue(source.nextRecord());
+                assertEquals(1, mapping.emailSource(source), tokenizer);
+                assertTrue(source.nextRecord());
+                assertEquals(ProspectColumnMapping.MISSING, mapping.emailSource(source), tokenizer);
+            }
+        }
+    }
+
+    private ProspectColumnMapping map(List<String> masterHeaders, String content) throws IOException {
+        try (CsvSource source = new CommonsCsvSource(write(content))) {
+            return ProspectColumnMapping.map(masterHeaders, source);
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile(directory, "prospects", ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
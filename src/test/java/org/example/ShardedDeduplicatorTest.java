@@ -0,0 +1,270 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrency tests of {@link ShardedDeduplicator} and its {@link SpscRing}s: rows routed by
+ * concurrent parser threads get the first-seen-wins verdicts of a sequential pass, the writer
+ * waits for PENDING rows, {@link ShardedDeduplicator#stop()} ends shards that wait for rows,
+ * and the combine with 'combine.dedup.shards' writes the sequential combine's output.
+ */
+class ShardedDeduplicatorTest {
+
+    private static final String SHARD_THREAD_PREFIX = "prospects-dedup-shard-";
+    private static final int FILES = 6;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void routedVerdictsMatchSequentialFirstSeenWins() throws Exception {
+        Random random = new Random(7);
+        List<List<ParallelProspectsCombiner.ParsedRow>> files = new ArrayList<>();
+        for (int file = 0; file < FILES; file++) {
+            List<ParallelProspectsCombiner.ParsedRow> rows = new ArrayList<>();
+            for (int row = 0; row < 5_000 + random.nextInt(5_000); row++) {
+                String email = "user" + random.nextInt(20_000) + "@example.com";
+                rows.add(new ParallelProspectsCombiner.ParsedRow(
+                    random.nextBoolean() ? email.toUpperCase(Locale.ROOT) : email, new String[0]));
+            }
+            files.add(rows);
+        }
+
+        int[] expected = sequentialVerdicts(files);
+        for (int shards : new int[] {1, 2, 4, 8}) {
+            assertArrayEquals(expected, shardedVerdicts(files, shards), shards + " shards");
+        }
+    }
+
+    @Test
+    void stopEndsShardsWaitingForRows() throws Exception {
+        ShardedDeduplicator deduplicator = new ShardedDeduplicator("hashset", 4, 2);
+        deduplicator.start();
+
+        // File 0 routes a partial batch and never closes; file 1 is never opened
+        ShardedDeduplicator.Router router = deduplicator.open(0);
+        ParallelProspectsCombiner.ParsedRow row = row("ann@example.com", 0, 0);
+        router.route(row);
+        router.flush();
+        assertEquals(SpillingDeduplicator.UNIQUE, ShardedDeduplicator.await(row));
+        assertTrue(shardThreadsAlive());
+
+        deduplicator.stop();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (shardThreadsAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(shardThreadsAlive(), "shard threads still running after stop()");
+    }
+
+    @Test
+    void interruptedWaitsThrow() throws Exception {
+        // A row that no shard will decide
+        assertInterrupted(() -> ShardedDeduplicator.await(new ParallelProspectsCombiner.ParsedRow("a@x.com", null)));
+
+        // A producer waiting on a full ring
+        SpscRing<String> ring = new SpscRing<>(1);
+        ring.put("first");
+        assertInterrupted(() -> ring.put("second"));
+
+        // A consumer waiting on an empty ring
+        SpscRing<String> empty = new SpscRing<>(1);
+        assertInterrupted(empty::take);
+
+        ring.close();
+        assertEquals("first", ring.take());
+        assertNull(ring.take());
+    }
+
+    @Test
+    void shardedCombineMatchesSequentialCombine() throws IOException {
+        Path prospects = Files.createDirectory(directory.resolve("prospects"));
+        Random random = new Random(11);
+        for (int file = 0; file < FILES; file++) {
+            StringBuilder csv = new StringBuilder("first_name,email,company\n");
+            for (int row = 0; row < 3_000; row++) {
+                String email = random.nextInt(30) == 0 ? "" : "user" + random.nextInt(8_000) + "@Example.com";
+                csv.append("name").append(file).append('-').append(row).append(',')
+                    .append(random.nextBoolean() ? " " + email + " " : email).append(",Acme\n");
+            }
+            Files.write(prospects.resolve("file" + file + ".csv"), csv.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path sequential = directory.resolve("sequential.csv");
+        Main2.combineProspectsCsvFiles(prospects.toString(), sequential.toString());
+        byte[] expected = Files.readAllBytes(sequential);
+
+        for (String shards : new String[] {"1", "2", "4"}) {
+            Path sharded = directory.resolve("sharded-" + shards + ".csv");
+            System.setProperty(Main2.THREADS_PROPERTY, "3");
+            System.setProperty(Main2.DEDUP_SHARDS_PROPERTY, shards);
+            try {
+                Main2.combineProspectsCsvFiles(prospects.toString(), sharded.toString());
+            } finally {
+                System.clearProperty(Main2.THREADS_PROPERTY);
+                System.clearProperty(Main2.DEDUP_SHARDS_PROPERTY);
+            }
+            assertArrayEquals(expected, Files.readAllBytes(sharded), shards + " shards");
+        }
+    }
+
+    /**
+     * @return Per row over all files in order, 1 for the first row of its email, else 0
+     */
+    private static int[] sequentialVerdicts(List<List<ParallelProspectsCombiner.ParsedRow>> files) {
+        List<Integer> verdicts = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (List<ParallelProspectsCombiner.ParsedRow> rows : files) {
+            for (ParallelProspectsCombiner.ParsedRow row : rows) {
+                verdicts.add(seen.add(row.email.toLowerCase(Locale.ROOT)) ? 1 : 0);
+            }
+        }
+        return verdicts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Routes every file from its own parser thread, the files opened in reverse order, and
+     * awaits the verdicts on this thread in file and row order, as the combine's writer does.
+     * Parsers hand their rows to the writer in chunks, right after flushing them.
+     */
+    private static int[] shardedVerdicts(List<List<ParallelProspectsCombiner.ParsedRow>> files, int shards)
+        throws Exception {
+        ShardedDeduplicator deduplicator = new ShardedDeduplicator("fingerprint", shards, files.size());
+        deduplicator.start();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<BlockingQueue<List<ParallelProspectsCombiner.ParsedRow>>> chunks = new ArrayList<>();
+        List<Thread> parsers = new ArrayList<>();
+        CountDownLatch opened = new CountDownLatch(files.size());
+        for (int file = 0; file < files.size(); file++) {
+            BlockingQueue<List<ParallelProspectsCombiner.ParsedRow>> queue = new ArrayBlockingQueue<>(1_000);
+            chunks.add(queue);
+            int fileIndex = file;
+            List<ParallelProspectsCombiner.ParsedRow> rows = copy(files.get(file));
+            parsers.add(new Thread(() -> {
+                try {
+                    // Later files open their routers first
+                    while (opened.getCount() > fileIndex + 1) {
+                        Thread.onSpinWait();
+                    }
+                    ShardedDeduplicator.Router router = deduplicator.open(fileIndex);
+                    opened.countDown();
+                    List<ParallelProspectsCombiner.ParsedRow> chunk = new ArrayList<>();
+                    for (int i = 0; i < rows.size(); i++) {
+                        ParallelProspectsCombiner.ParsedRow row = rows.get(i);
+                        row.fingerprint = EmailNormalizer.fingerprint(row.email);
+                        row.sequence = (long) fileIndex << 32 | i;
+                        router.route(row);
+                        chunk.add(row);
+                        if (chunk.size() == 500) {
+                            router.flush();
+                            queue.put(chunk);
+                            chunk = new ArrayList<>();
+                        }
+                    }
+                    router.flush();
+                    router.close();
+                    queue.put(chunk);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (int file = parsers.size() - 1; file >= 0; file--) {
+            parsers.get(file).start();
+        }
+
+        int[] verdicts = new int[files.stream().mapToInt(List::size).sum()];
+        int next = 0;
+        try {
+            for (int file = 0; file < files.size(); file++) {
+                int remaining = files.get(file).size();
+                while (remaining > 0) {
+                    List<ParallelProspectsCombiner.ParsedRow> chunk = chunks.get(file).poll(30, TimeUnit.SECONDS);
+                    assertNull(failure.get());
+                    assertTrue(chunk != null, "parser of file " + file + " stalled");
+                    for (ParallelProspectsCombiner.ParsedRow row : chunk) {
+                        verdicts[next++] = ShardedDeduplicator.await(row) == SpillingDeduplicator.UNIQUE ? 1 : 0;
+                    }
+                    remaining -= chunk.size();
+                }
+            }
+        } finally {
+            deduplicator.stop();
+            for (Thread parser : parsers) {
+                parser.join();
+            }
+        }
+        assertNull(failure.get());
+        assertEquals(Arrays.stream(verdicts).sum(), deduplicator.uniqueEmails());
+        return verdicts;
+    }
+
+    private static List<ParallelProspectsCombiner.ParsedRow> copy(List<ParallelProspectsCombiner.ParsedRow> rows) {
+        List<ParallelProspectsCombiner.ParsedRow> copies = new ArrayList<>(rows.size());
+        for (ParallelProspectsCombiner.ParsedRow row : rows) {
+            copies.add(new ParallelProspectsCombiner.ParsedRow(row.email, row.values));
+        }
+        return copies;
+    }
+
+    private static ParallelProspectsCombiner.ParsedRow row(String email, int file, int row) {
+        ParallelProspectsCombiner.ParsedRow parsed = new ParallelProspectsCombiner.ParsedRow(email, new String[0]);
+        parsed.fingerprint = EmailNormalizer.fingerprint(email);
+        parsed.sequence = (long) file << 32 | row;
+        return parsed;
+    }
+
+    private static boolean shardThreadsAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(thread -> thread.getName().startsWith(SHARD_THREAD_PREFIX) && thread.isAlive());
+    }
+
+    /**
+     * Runs a blocking call on a new thread, interrupts it once it waits and checks that the
+     * call ends with an InterruptedException.
+     */
+    private static void assertInterrupted(InterruptibleCall call) throws InterruptedException {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                call.run();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(thread.isAlive(), "call did not end after an interrupt");
+        assertTrue(thrown.get() instanceof InterruptedException, String.valueOf(thrown.get()));
+    }
+
+    private interface InterruptibleCall {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link SpillingDeduplicator} gives the in-memory result once it spills: the first
+ * row of every email wins, rows come out in input order and duplicates are counted per file.
+ *
+ * A budget of one byte makes the deduplicator spill at its first budget check, after 4096
+ * distinct emails, so the generated rows have duplicates on both sides of the spill point:
+ * emails first seen before it (answered by the frozen set) and after it (resolved on disk).
+ */
+class SpillingDeduplicatorTest {
+
+    private static final int FILES = 3;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void spillKeepsFirstSeenWinsAndOrder() throws IOException {
+        for (String kind : new String[] {"hashset", "fingerprint", "exact"}) {
+            assertSameAsInMemory(kind, 20_000, 12_000, 1);
+        }
+    }
+
+    @Test
+    void oversizedPartitionsAreSplit() throws IOException {
+        // About 5,900 distinct deferred emails per partition, past the 4096 of a budget check
+        assertSameAsInMemory("fingerprint", 700_000, 500_000, 2);
+    }
+
+    private void assertSameAsInMemory(String kind, int rows, int distinctEmails, long seed) throws IOException {
+        List<String[]> input = rows(rows, distinctEmails, seed);
+
+        // Expected: the sequential in-memory result
+        CsvOutput expected = CsvOutput.openBuffer();
+        int expectedUnique = 0;
+        int[] expectedDuplicates = new int[FILES];
+        Set<String> seen = new HashSet<>();
+        for (String[] row : input) {
+            if (seen.add(row[0].trim().toLowerCase(Locale.ROOT))) {
+                expected.printRecord(row);
+                expectedUnique++;
+            } else {
+                expectedDuplicates[fileIndex(row)]++;
+            }
+        }
+
+        CsvOutput output = CsvOutput.openBuffer();
+        int[] duplicates = new int[FILES];
+        try (SpillingDeduplicator deduplicator = new SpillingDeduplicator(kind, 1, directory)) {
+            for (String[] row : input) {
+                int status = deduplicator.add(row[0], fileIndex(row));
+                if (status == SpillingDeduplicator.DUPLICATE) {
+                    duplicates[fileIndex(row)]++;
+                } else if (status == SpillingDeduplicator.DEFERRED) {
+                    deduplicator.defer(row);
+                } else {
+                    output.printRecord(row);
+                }
+            }
+            assertTrue(deduplicator.spilling(), kind);
+
+            int[] deferredDuplicates = deduplicator.finish(output, FILES);
+            for (int i = 0; i < FILES; i++) {
+                duplicates[i] += deferredDuplicates[i];
+            }
+            assertEquals(expectedUnique, deduplicator.uniqueEmails(), kind);
+        }
+
+        assertEquals(text(expected), text(output), kind);
+        assertArrayEquals(expectedDuplicates, duplicates, kind);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertFalse(files.findAny().isPresent(), "spill files left behind");
+        }
+    }
+
+    /**
+     * Rows of (email, file, row number) over a pool of emails, each written in varying case
+     * and padding, spread over {@link #FILES} files in order.
+     */
+    private static List<String[]> rows(int rows, int distinctEmails, long seed) {
+        Random random = new Random(seed);
+        List<String[]> input = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String email = "user" + random.nextInt(distinctEmails) + "@example.com";
+            switch (random.nextInt(3)) {
+                case 0:
+                    email = email.toUpperCase(Locale.ROOT);
+                    break;
+                case 1:
+                    email = " " + email + " ";
+                    break;
+                default:
+                    break;
+            }
+            input.add(new String[] {email, "file" + (i * FILES / rows), "row" + i});
+        }
+        return input;
+    }
+
+    private static int fileIndex(String[] row) {
+        return row[1].charAt(4) - '0';
+    }
+
+    private static String text(CsvOutput output) throws IOException {
+        output.flush();
+        return StandardCharsets.UTF_8.decode(output.bytes()).toString();
+    }
+}
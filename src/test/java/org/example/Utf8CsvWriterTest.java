@@ -0,0 +1,142 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that {@link Utf8CsvWriter} writes byte for byte what {@link CommonsCsvOutput} writes,
+ * for the values its quoting rules single out: a leading '#', leading or trailing spaces,
+ * embedded quotes, CR and LF, non-ASCII text, empty and null values, each as the first and as a
+ * later value of a record.
+ */
+class Utf8CsvWriterTest {
+
+    private static final String[] VALUES = {
+        "plain", "#comment", "# ", "a#b", " leading", "trailing ", "\tTab", "tab\t", "!bang", "\"",
+        "say \"hi\"", "a,b", "line\nbreak", "line\r\nbreak", "\r", "\n", "élève", "Jürgen Åström",
+        "✓ done", "😀", "é ", "", null, "\uD800lone", "x\uDC00",
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyValueFirstAndLater() throws IOException {
+        CsvOutput commons = new CommonsCsvOutput(null);
+        CsvOutput utf8 = new Utf8CsvWriter(null);
+        for (CsvOutput output : new CsvOutput[] {commons, utf8}) {
+            for (String value : VALUES) {
+                output.print(value);
+                output.println();
+                output.print("x");
+                output.print(value);
+                output.println();
+                output.print(value);
+                output.print(value);
+                output.println();
+            }
+        }
+        assertSameBytes(commons, utf8);
+    }
+
+    @Test
+    void randomRecords() throws IOException {
+        Random random = new Random(5);
+        CsvOutput commons = new CommonsCsvOutput(null);
+        CsvOutput utf8 = new Utf8CsvWriter(null);
+        for (int record = 0; record < 2_000; record++) {
+            String[] values = new String[1 + random.nextInt(5)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = randomValue(random);
+            }
+            commons.printRecord(values);
+            utf8.printRecord(values);
+        }
+        assertSameBytes(commons, utf8);
+    }
+
+    @Test
+    void channelOutputAcrossBufferBlocks() throws IOException {
+        Path commonsFile = directory.resolve("commons.csv");
+        Path utf8File = directory.resolve("utf8.csv");
+        try (FileChannel commonsChannel = FileChannel.open(commonsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel utf8Channel = FileChannel.open(utf8File, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            CsvOutput commons = new CommonsCsvOutput(commonsChannel);
+            CsvOutput utf8 = new Utf8CsvWriter(utf8Channel);
+            Random random = new Random(6);
+            // A few times Utf8CsvWriter.BUFFER_SIZE, with values longer than a block
+            String big = "é\"".repeat(Utf8CsvWriter.BUFFER_SIZE / 2);
+            for (int record = 0; record < 40_000; record++) {
+                String[] values = {record % 10_000 == 0 ? big : randomValue(random), randomValue(random)};
+                commons.printRecord(values);
+                utf8.printRecord(values);
+            }
+            commons.flush();
+            utf8.flush();
+        }
+        assertArrayEquals(Files.readAllBytes(commonsFile), Files.readAllBytes(utf8File));
+    }
+
+    @Test
+    void mappedSlices() throws IOException {
+        // Every quotable value of VALUES, as a quoted field so it reads back unchanged
+        StringBuilder csv = new StringBuilder("a,b\n");
+        for (String value : VALUES) {
+            if (value != null && !value.contains("\uD800") && !value.contains("\uDC00")) {
+                String quoted = "\"" + value.replace("\"", "\"\"") + "\"";
+                csv.append(quoted).append(',').append(quoted).append('\n');
+            }
+        }
+        csv.append("plain,#x\n");
+        Path file = directory.resolve("slices.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        CsvOutput commons = new CommonsCsvOutput(null);
+        CsvOutput utf8 = new Utf8CsvWriter(null);
+        try (MappedCsvSource source = new MappedCsvSource(file)) {
+            while (source.nextRecord()) {
+                for (CsvOutput output : new CsvOutput[] {commons, utf8}) {
+                    for (int i = 0; i < source.size(); i++) {
+                        output.print(source, i);
+                    }
+                    output.println();
+                }
+            }
+        }
+        assertSameBytes(commons, utf8);
+    }
+
+    private static String randomValue(Random random) {
+        if (random.nextInt(20) == 0) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            value.append(VALUES[random.nextInt(VALUES.length - 3)]);
+        }
+        return value.toString();
+    }
+
+    private static void assertSameBytes(CsvOutput expected, CsvOutput actual) throws IOException {
+        expected.flush();
+        actual.flush();
+        assertArrayEquals(bytes(expected.bytes()), bytes(actual.bytes()));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
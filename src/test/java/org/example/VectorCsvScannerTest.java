@@ -0,0 +1,104 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Randomized equivalence test of {@link VectorCsvScanner} against {@link ScalarCsvScanner}:
+ * both methods must return the same index and the same {@link CsvScanner#ESCAPED} flag for
+ * every start and limit.
+ *
+ * Inputs are dense in quotes, delimiters and line breaks, so quote runs, doubled quotes and
+ * delimiters straddle the 16 to 64 byte vector lanes and the 64-byte blocks, and limits cut
+ * them. Needs '--add-modules jdk.incubator.vector', which the Maven build passes to the tests.
+ */
+class VectorCsvScannerTest {
+
+    private static final byte[] ALPHABET = "aaaa,\"\"\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] BOUNDARIES = {16, 32, 48, 64, 128, 192};
+
+    @Test
+    void randomInputs() {
+        assumeTrue(VectorCsvScanner.isSupported(), "no vectors of 16 to 64 bytes");
+        Random random = new Random(3);
+        // Shared by all inputs, as a source keeps its scanner across windows
+        CsvScanner scalar = new ScalarCsvScanner();
+        CsvScanner vector = new VectorCsvScanner();
+        for (int run = 0; run < 400; run++) {
+            byte[] bytes = new byte[random.nextInt(260)];
+            // Mostly plain text with bursts of structural bytes, or structural bytes throughout
+            int plain = random.nextInt(4) == 0 ? 0 : random.nextInt(4);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = random.nextInt(plain + 1) > 0 ? (byte) 'a' : ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            assertSameResults(scalar, vector, wrap(bytes, random.nextBoolean()), "run " + run);
+        }
+    }
+
+    @Test
+    void quoteRunsAcrossLaneBoundaries() {
+        assumeTrue(VectorCsvScanner.isSupported(), "no vectors of 16 to 64 bytes");
+        CsvScanner scalar = new ScalarCsvScanner();
+        CsvScanner vector = new VectorCsvScanner();
+        for (int boundary : BOUNDARIES) {
+            for (int offset = -3; offset <= 3; offset++) {
+                for (int run = 1; run <= 5; run++) {
+                    for (byte after : new byte[] {'a', ',', '\n'}) {
+                        byte[] bytes = new byte[224];
+                        Arrays.fill(bytes, (byte) 'a');
+                        int start = boundary + offset;
+                        for (int i = start; i < start + run; i++) {
+                            bytes[i] = '"';
+                        }
+                        bytes[start + run] = after;
+                        assertSameResults(scalar, vector, wrap(bytes, false),
+                            run + " quotes at " + start + " followed by '" + (char) after + "'");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares both methods from every start, up to the end of the input and up to limits at,
+     * just before and just after each block and lane boundary.
+     */
+    private static void assertSameResults(CsvScanner scalar, CsvScanner vector, ByteBuffer buffer, String input) {
+        int length = buffer.capacity();
+        for (int from = 0; from <= length; from++) {
+            assertSameResults(scalar, vector, buffer, from, length, input);
+            for (int boundary : BOUNDARIES) {
+                for (int limit = boundary - 1; limit <= boundary + 1; limit++) {
+                    if (limit >= from && limit <= length) {
+                        assertSameResults(scalar, vector, buffer, from, limit, input);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertSameResults(CsvScanner scalar, CsvScanner vector, ByteBuffer buffer, int from,
+                                          int limit, String input) {
+        String call = input + ", from " + from + " to " + limit;
+        assertEquals(scalar.delimiterOrLineBreak(buffer, from, limit),
+            vector.delimiterOrLineBreak(buffer, from, limit), "delimiterOrLineBreak, " + call);
+        assertEquals(scalar.closingQuote(buffer, from, limit),
+            vector.closingQuote(buffer, from, limit), "closingQuote, " + call);
+    }
+
+    private static ByteBuffer wrap(byte[] bytes, boolean direct) {
+        if (!direct) {
+            return ByteBuffer.wrap(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).clear();
+        return buffer;
+    }
+}
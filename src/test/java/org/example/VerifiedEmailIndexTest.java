@@ -0,0 +1,76 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link VerifiedEmailIndex} is only reused while it describes the current
+ * content of checked.csv.
+ */
+class VerifiedEmailIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexOfUnchangedSourceOpens() throws IOException {
+        Path source = writeChecked("x,Ann@Example.com\nx,bob@example.com\n");
+        Path index = directory.resolve("checked.csv.idx");
+        buildIndex(source, index, VerifiedEmailIndex.sourceStamp(source));
+
+        VerifiedEmailIndex opened = VerifiedEmailIndex.open(index, source);
+        assertNotNull(opened);
+        assertEquals(2, opened.size());
+        assertTrue(opened.contains(" ann@example.COM"));
+        assertFalse(opened.contains("carl@example.com"));
+    }
+
+    @Test
+    void sourceChangedWhileIndexingLeavesIndexStale() throws IOException {
+        Path source = writeChecked("x,ann@example.com\n");
+        Path index = directory.resolve("checked.csv.idx");
+        long[] stamp = VerifiedEmailIndex.sourceStamp(source);
+        EmailFingerprintSet emails = new EmailFingerprintSet(0, false);
+        Main.readCheckedEmails(source.toString(), emails, null);
+
+        // Appended after the read, before the index is written
+        Files.write(source, "x,bob@example.com\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        VerifiedEmailIndex.write(index, source, stamp, emails);
+
+        assertNull(VerifiedEmailIndex.open(index, source));
+    }
+
+    @Test
+    void sourceChangedAfterIndexingLeavesIndexStale() throws IOException {
+        Path source = writeChecked("x,ann@example.com\n");
+        Path index = directory.resolve("checked.csv.idx");
+        buildIndex(source, index, VerifiedEmailIndex.sourceStamp(source));
+
+        Files.write(source, "x,bob@example.com\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNull(VerifiedEmailIndex.open(index, source));
+    }
+
+    private static void buildIndex(Path source, Path index, long[] stamp) throws IOException {
+        EmailFingerprintSet emails = new EmailFingerprintSet(0, false);
+        Main.readCheckedEmails(source.toString(), emails, null);
+        VerifiedEmailIndex.write(index, source, stamp, emails);
+    }
+
+    private Path writeChecked(String rows) throws IOException {
+        Path source = directory.resolve("checked.csv");
+        Files.write(source, ("Email,ELV Result\n" + rows).getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+}